@@ -0,0 +1,201 @@
+import booking.bench.Operation;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Bridge from the JMH benchmarks in booking.bench to the booking classes, which are package-private
+ * in the default package. Every operation works on its own BookingService holding show 1 with the
+ * requested number of one-seat tickets booked from seat A1 onwards, ticket n by phone 80000000 + n.
+ */
+public final class BenchmarkOperations {
+  private static final int SHOW_NUM = 1;
+  private static final int FIRST_PHONE = 80000000;
+  private static final PrintStream NULL_OUT =
+      new PrintStream(
+          new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+          });
+
+  private BenchmarkOperations() {}
+
+  public static Operation create(String name, int rows, int seats, int tickets) {
+    switch (name) {
+      case "parse-mode":
+        return parse(rows, seats, tickets, "MODE BUYER", true);
+      case "parse-setup":
+        return parse(rows, seats, tickets, "SETUP 2 " + rows + " " + seats + " 5", true);
+      case "parse-view":
+        return parse(rows, seats, tickets, "VIEW " + SHOW_NUM, true);
+      case "parse-availability":
+        return parse(rows, seats, tickets, "AVAILABILITY " + SHOW_NUM, false);
+      case "parse-book":
+        int last = rows * seats - 1;
+        String bookSeats = label(last - 1, seats) + "," + label(last, seats);
+        return parse(rows, seats, tickets, "BOOK " + SHOW_NUM + " 91234567 " + bookSeats, false);
+      case "parse-cancel":
+        return parse(rows, seats, Math.max(tickets, 1), "CANCEL 1 " + FIRST_PHONE, false);
+      case "book":
+        return book(rows, seats, tickets, false);
+      case "book-best":
+        return book(rows, seats, tickets, true);
+      case "cancel":
+        return cancel(rows, seats, tickets);
+      case "availability":
+        return availability(rows, seats, tickets, false);
+      case "availability-uncached":
+        return availability(rows, seats, tickets, true);
+      case "view":
+        return view(rows, seats, tickets, false);
+      case "view-uncached":
+        return view(rows, seats, tickets, true);
+      case "toString":
+        return toString(rows, seats, tickets);
+      default:
+        throw new IllegalArgumentException("Unknown operation " + name);
+    }
+  }
+
+  private static Operation parse(
+      int rows, int seats, int tickets, String line, boolean isAdminMode) {
+    BookingService service = newService(rows, seats, tickets);
+    CommandTokenizer tokens = new CommandTokenizer();
+    return new Operation() {
+      @Override
+      public void reset() {}
+
+      @Override
+      public int run() throws Exception {
+        return BookingASystem.checkInput(tokens.reset(line), service, isAdminMode).getShowNum();
+      }
+    };
+  }
+
+  private static Operation book(int rows, int seats, int tickets, boolean best) {
+    checkCapacity(rows, seats, tickets);
+    return new Operation() {
+      private BookingService service;
+
+      @Override
+      public void reset() {
+        service = newService(rows, seats, tickets);
+      }
+
+      @Override
+      public int run() {
+        int booked = 0;
+        for (int n = tickets; n < tickets + BATCH_SIZE; n++) {
+          Ticket ticket =
+              best
+                  ? service.bookBest(SHOW_NUM, FIRST_PHONE + n, 1)
+                  : service.book(SHOW_NUM, FIRST_PHONE + n, seat(n, seats));
+          booked += ticket.getSeats().length;
+        }
+        return booked;
+      }
+    };
+  }
+
+  private static Operation cancel(int rows, int seats, int tickets) {
+    checkCapacity(rows, seats, tickets);
+    return new Operation() {
+      private BookingService service;
+
+      @Override
+      public void reset() {
+        service = newService(rows, seats, tickets + BATCH_SIZE);
+      }
+
+      @Override
+      public int run() {
+        long exceeded = 0;
+        for (int n = tickets; n < tickets + BATCH_SIZE; n++) {
+          exceeded += service.cancel(n + 1, FIRST_PHONE + n);
+        }
+        return (int) exceeded;
+      }
+    };
+  }
+
+  private static Operation availability(int rows, int seats, int tickets, boolean uncached) {
+    Show show = newService(rows, seats, tickets).getShow(SHOW_NUM);
+    return new Operation() {
+      @Override
+      public void reset() {}
+
+      @Override
+      public int run() {
+        if (uncached) {
+          toggleLastSeat(show, rows, seats);
+        }
+        show.printAvailability(NULL_OUT);
+        return show.getFreeSeats();
+      }
+    };
+  }
+
+  private static Operation view(int rows, int seats, int tickets, boolean uncached) {
+    Show show = newService(rows, seats, tickets).getShow(SHOW_NUM);
+    return new Operation() {
+      @Override
+      public void reset() {}
+
+      @Override
+      public int run() {
+        if (uncached) {
+          toggleLastSeat(show, rows, seats);
+        }
+        show.printView(NULL_OUT);
+        return show.getFreeSeats();
+      }
+    };
+  }
+
+  private static Operation toString(int rows, int seats, int tickets) {
+    Show show = newService(rows, seats, tickets).getShow(SHOW_NUM);
+    return new Operation() {
+      @Override
+      public void reset() {}
+
+      @Override
+      public int run() {
+        return show.toString().length();
+      }
+    };
+  }
+
+  private static BookingService newService(int rows, int seats, int tickets) {
+    if (tickets > rows * seats) {
+      throw new IllegalArgumentException(tickets + " tickets do not fit " + rows + "x" + seats);
+    }
+    BookingService service = new BookingService();
+    service.setup(SHOW_NUM, rows, seats, 60);
+    for (int n = 0; n < tickets; n++) {
+      service.book(SHOW_NUM, FIRST_PHONE + n, seat(n, seats));
+    }
+    return service;
+  }
+
+  private static void checkCapacity(int rows, int seats, int tickets) {
+    if (tickets + Operation.BATCH_SIZE > rows * seats) {
+      throw new IllegalArgumentException(
+          "A batch after " + tickets + " tickets does not fit " + rows + "x" + seats);
+    }
+  }
+
+  /** Flips the occupancy of the last seat, which changes the show's version on every call */
+  private static void toggleLastSeat(Show show, int rows, int seats) {
+    show.setOccupiedSeats(rows - 1, seats - 1, !show.getOccupiedSeats(rows - 1, seats - 1));
+  }
+
+  private static int[] seat(int n, int seats) {
+    return new int[] {Seats.code(n / seats, n % seats)};
+  }
+
+  private static String label(int n, int seats) {
+    return Seats.label(Seats.code(n / seats, n % seats));
+  }
+}
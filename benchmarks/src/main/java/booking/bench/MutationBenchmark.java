@@ -0,0 +1,56 @@
+package booking.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BOOK by seat label, BOOK by number of seats (book-best) and CANCEL as applied by
+ * BookingService. Bookings fill a show and cancellations empty it, so every invocation runs a batch
+ * of them from a freshly reset show and results are reported per single booking or cancellation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MutationBenchmark {
+  @Param({"book", "book-best", "cancel"})
+  public String mutation;
+
+  @Param({"13", "26"})
+  public int rows;
+
+  @Param({"0", "30"})
+  public int tickets;
+
+  private Operation operation;
+
+  @Setup
+  public void setUp() {
+    operation = Operations.create(mutation, rows, 10, tickets);
+  }
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    operation.reset();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Operation.BATCH_SIZE)
+  public int mutate() throws Exception {
+    return operation.run();
+  }
+}
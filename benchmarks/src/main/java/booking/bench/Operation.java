@@ -0,0 +1,17 @@
+package booking.bench;
+
+/**
+ * One benchmarked operation against the booking system. The booking classes live in the default
+ * package, which named packages cannot import and which JMH does not accept benchmarks in, so the
+ * default-package BenchmarkOperations bridge implements this interface for the benchmarks here.
+ */
+public interface Operation {
+  /** Number of bookings or cancellations a mutation operation performs per run */
+  int BATCH_SIZE = 100;
+
+  /** Restores the state the operation starts from, called outside of the measurement */
+  void reset();
+
+  /** Runs the operation once and returns a value for the benchmark to consume */
+  int run() throws Exception;
+}
@@ -0,0 +1,28 @@
+package booking.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/** Looks up operations from the default-package BenchmarkOperations bridge */
+final class Operations {
+  private Operations() {}
+
+  /**
+   * Creates the named operation on a fresh booking system holding one show of the given size with
+   * the given number of one-seat tickets already booked
+   */
+  static Operation create(String name, int rows, int seats, int tickets) {
+    try {
+      Method create =
+          Class.forName("BenchmarkOperations")
+              .getMethod("create", String.class, int.class, int.class, int.class);
+      Operation operation = (Operation) create.invoke(null, name, rows, seats, tickets);
+      operation.reset();
+      return operation;
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Cannot create operation " + name, e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot find the BenchmarkOperations bridge", e);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package booking.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** BookingASystem.checkInput for a valid line of each command type */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+  @Param({"MODE", "SETUP", "VIEW", "AVAILABILITY", "BOOK", "CANCEL"})
+  public String command;
+
+  private Operation operation;
+
+  @Setup
+  public void setUp() {
+    operation = Operations.create("parse-" + command.toLowerCase(), 10, 10, 10);
+  }
+
+  @Benchmark
+  public int checkInput() throws Exception {
+    return operation.run();
+  }
+}
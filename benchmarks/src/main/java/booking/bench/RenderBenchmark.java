@@ -0,0 +1,50 @@
+package booking.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Show.printAvailability and the VIEW text, both served from the render cache and re-rendered
+ * after a seat change on every call, up to stadium-sized shows of 100k seats
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+  @Param({"availability", "availability-uncached", "view", "view-uncached", "toString"})
+  public String render;
+
+  @Param({"5", "26", "400"})
+  public int rows;
+
+  @Param({"10", "250"})
+  public int seats;
+
+  @Param({"0", "50"})
+  public int tickets;
+
+  private Operation operation;
+
+  @Setup
+  public void setUp() {
+    operation = Operations.create(render, rows, seats, tickets);
+  }
+
+  @Benchmark
+  public int render() throws Exception {
+    return operation.run();
+  }
+}
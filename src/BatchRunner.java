@@ -0,0 +1,71 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Runs a file of command lines through a session without the welcome text or prompts of the
+ * console, so that the output is exactly what the console prints in response to each command. The
+ * file is memory-mapped a window at a time and every line is tokenized in place, and all responses
+ * go through one buffered stream that is only flushed once the file is done.
+ */
+final class BatchRunner {
+  private static final int WINDOW_SIZE = 1 << 26;
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  private BatchRunner() {}
+
+  /**
+   * Runs every line of the command file until its end or an EXIT command
+   *
+   * @exception IOException if the file cannot be read, contains a line longer than the mapping
+   *     window, or the output cannot be written
+   */
+  public static void run(Path commands, OutputStream output, CommandSession session)
+      throws IOException {
+    PrintStream out = new PrintStream(new BufferedOutputStream(output, OUTPUT_BUFFER_SIZE), false);
+    ByteSequence line = new ByteSequence();
+    try (FileChannel channel = FileChannel.open(commands, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      boolean running = true;
+      while (running && position < size) {
+        int length = (int) Math.min(WINDOW_SIZE, size - position);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        boolean lastWindow = position + length == size;
+        int start = 0;
+        for (int i = 0; running && i < length; i++) {
+          if (buffer.get(i) == '\n') {
+            running = session.execute(line(line, buffer, start, i), out);
+            start = i + 1;
+          }
+        }
+        if (running && lastWindow && start < length) {
+          running = session.execute(line(line, buffer, start, length), out);
+          start = length;
+        }
+        if (running && !lastWindow && start == 0) {
+          throw new IOException("Command line longer than " + WINDOW_SIZE + " bytes");
+        }
+        // the next window starts at the first line not yet run
+        position += lastWindow ? length : start;
+      }
+    }
+    out.flush();
+    if (out.checkError()) {
+      throw new IOException("Failed to write batch output");
+    }
+  }
+
+  /** Points the view at the line between start and end, dropping a trailing carriage return */
+  private static ByteSequence line(ByteSequence line, MappedByteBuffer buffer, int start, int end) {
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    return line.reset(buffer, start, end - start);
+  }
+}
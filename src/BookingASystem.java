@@ -1,21 +1,72 @@
-import java.time.Duration;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class BookingASystem {
   public static final String COMMAND_SETUP = "SETUP";
   public static final String COMMAND_VIEW = "VIEW";
   public static final String COMMAND_AVAILABILITY = "AVAILABILITY";
+  public static final String COMMAND_SEATSLEFT = "SEATSLEFT";
+  public static final String COMMAND_FINDSHOWS = "FINDSHOWS";
   public static final String COMMAND_BOOK = "BOOK";
+  public static final String COMMAND_BOOKBATCH = "BOOKBATCH";
   public static final String COMMAND_CANCEL = "CANCEL";
+  public static final String COMMAND_MYTICKETS = "MYTICKETS";
+  public static final String COMMAND_HOLD = "HOLD";
+  public static final String COMMAND_CONFIRM = "CONFIRM";
   public static final String COMMAND_MODE = "MODE";
+  public static final String COMMAND_CHECKPOINT = "CHECKPOINT";
+  public static final String COMMAND_STATS = "STATS";
   public static final String COMMAND_EXIT = "EXIT";
 
+  // commands accepted by checkInput, EXIT is handled by the input loop itself
+  static final String[] COMMANDS = {
+    COMMAND_MODE,
+    COMMAND_SETUP,
+    COMMAND_VIEW,
+    COMMAND_AVAILABILITY,
+    COMMAND_SEATSLEFT,
+    COMMAND_FINDSHOWS,
+    COMMAND_BOOK,
+    COMMAND_BOOKBATCH,
+    COMMAND_CANCEL,
+    COMMAND_MYTICKETS,
+    COMMAND_HOLD,
+    COMMAND_CONFIRM,
+    COMMAND_CHECKPOINT,
+    COMMAND_STATS
+  };
+
+  public static final String OPTION_JOURNAL = "--journal";
+  public static final String OPTION_SNAPSHOT = "--snapshot";
+  public static final String OPTION_HOLD_TTL = "--hold-ttl";
+  public static final String OPTION_PORT = "--port";
+  public static final String OPTION_HTTP_PORT = "--http";
+  public static final String OPTION_BIND = "--bind";
+  public static final String OPTION_STATS_INTERVAL = "--stats-interval";
+  public static final String OPTION_SHARDS = "--shards";
+  public static final String OPTION_OFFHEAP_SEATS = "--offheap-seats";
+
   public static final String ADMIN = "ADMIN";
   public static final String BUYER = "BUYER";
 
-  public static final int MAX_SEATS = 10;
-  public static final int MAX_ROWS = 26;
+  public static final int MAX_SEATS = 1000;
+  // rows are lettered A to Z, then AA to ZZ
+  public static final int MAX_ROWS = 702;
 
   public static final String ERROR_MSG_INVALID_INPUT = "-- Please try again! Invalid input: ";
   public static final String ERROR_MSG_MODE = "Please switch mode and try again";
@@ -30,14 +81,23 @@ public class BookingASystem {
   public static final String ERROR_MSG_DUPLICATE_SHOW =
       "Show Number already exist, please select another number";
   public static final String ERROR_MSG_TICKET_NUMBER = "Ticket Number does not exist";
+  public static final String ERROR_MSG_HOLD_NUMBER = "Hold Number does not exist or has expired";
+  public static final String ERROR_MSG_MISMATCH_HOLD_PHONE =
+      "Hold Number with this Phone Number does not exist";
   public static final String ERROR_MSG_COMMAND = "Command does not exist";
   public static final String ERROR_MSG_SEAT = "Seat is invalid: ";
+  public static final String ERROR_MSG_NOT_ENOUGH_SEATS = "Not enough seats available together";
   public static final String ERROR_MSG_MISMATCH_TICKET_PHONE =
       "Ticket Number with this Phone Number does not exist";
   public static final String ERROR_MSG_INVALID_PHONE_NUMBER =
       "Phone Number is invalid, must be 8 digits and starts with either 6, 8 or 9";
   public static final String ERROR_MSG_DUPLICATE_PHONE =
       "Phone Number has been used for this show, only one booking is allowed per show";
+  public static final String ERROR_MSG_REMOTE_CHECKPOINT =
+      "CHECKPOINT is only allowed on the console or in a command file";
+  private static final String ERROR_MSG_PREFIX = "ERROR_MSG_";
+  // the message of every ERROR_MSG_ constant and the name it is known by without the prefix
+  private static final Map<String, String> ERROR_CODES = errorCodes();
 
   public static final String MSG_MODE_BUYER =
       "-- Current Mode: Buyer ------------------------------------------------";
@@ -45,177 +105,250 @@ public class BookingASystem {
       "-- Current Mode: Admin ------------------------------------------------";
   public static final String MSG_SETUP = "-- Show added successfully";
   public static final String MSG_BOOK = "-- Ticket booked successfully, #";
+  public static final String MSG_BOOKBATCH = "-- Tickets booked: ";
   public static final String MSG_CANCEL_SUCCESS = "-- Ticket cancelled successfully, #";
   public static final String MSG_CANCEL_FAILURE =
       "-- Ticket cannot be cancelled, exceeded window period by (mins): ";
+  public static final String MSG_HOLD = "-- Seats held successfully, #";
+  public static final String MSG_HOLD_EXPIRY = ", expires in (secs): ";
+  public static final String MSG_CHECKPOINT = "-- Checkpoint saved successfully";
+  public static final String MSG_MYTICKETS = "-- Tickets of Phone# ";
+  public static final String MSG_VIEW_MORE = "-- More tickets, next page: ";
+  public static final String MSG_SEATSLEFT = "-- Seats left for Show Number ";
+  public static final String MSG_SEATSLEFT_TOGETHER = ", most together in a row: ";
+  public static final String MSG_FINDSHOWS = "-- Shows with ";
+  // shows listed by FINDSHOWS, those with the most seats together
+  public static final int MAX_FOUND_SHOWS = 10;
 
+  /**
+   * Runs the interactive console, or with a command file argument runs the file in batch mode,
+   * writing responses to the optional output file argument or to standard output. With the
+   * --journal option, state is first rebuilt from the journal file and every change is then
+   * appended to it. With the --snapshot option, shows and tickets are loaded on demand from a
+   * snapshot file written by CHECKPOINT, and only the journal records after it are replayed. The
+   * --hold-ttl option sets how many seconds a HOLD keeps its seats. With the --port option, the
+   * console is replaced by a TCP server taking command lines from any number of clients. The
+   * --http option additionally serves the HTTP/JSON API on the given port while the system runs.
+   * The --stats-interval option prints the STATS output to standard error every given seconds.
+   * The --shards option partitions the shows across the given number of single-threaded shards.
+   * The --offheap-seats option keeps the seats of all shows in one off-heap region of the given
+   * number of megabytes.
+   */
+  // the snapshot is only held open while the system runs, shows are loaded from it by the service
+  @SuppressWarnings("try")
   public static void main(String args[]) {
+    List<String> files = new ArrayList<>();
+    String journalFile = null;
+    String snapshotFile = null;
+    String holdTtl = null;
+    String port = null;
+    String httpPort = null;
+    String bindAddress = null;
+    String statsInterval = null;
+    String shardCount = null;
+    String offHeapMegabytes = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals(OPTION_JOURNAL) && i + 1 < args.length) {
+        journalFile = args[++i];
+      } else if (args[i].equals(OPTION_SNAPSHOT) && i + 1 < args.length) {
+        snapshotFile = args[++i];
+      } else if (args[i].equals(OPTION_HOLD_TTL) && i + 1 < args.length) {
+        holdTtl = args[++i];
+      } else if (args[i].equals(OPTION_PORT) && i + 1 < args.length) {
+        port = args[++i];
+      } else if (args[i].equals(OPTION_HTTP_PORT) && i + 1 < args.length) {
+        httpPort = args[++i];
+      } else if (args[i].equals(OPTION_BIND) && i + 1 < args.length) {
+        bindAddress = args[++i];
+      } else if (args[i].equals(OPTION_STATS_INTERVAL) && i + 1 < args.length) {
+        statsInterval = args[++i];
+      } else if (args[i].equals(OPTION_SHARDS) && i + 1 < args.length) {
+        shardCount = args[++i];
+      } else if (args[i].equals(OPTION_OFFHEAP_SEATS) && i + 1 < args.length) {
+        offHeapMegabytes = args[++i];
+      } else {
+        files.add(args[i]);
+      }
+    }
+
+    BookingService service = new BookingService();
+    if (holdTtl != null) {
+      service.setHoldTtl(Long.parseLong(holdTtl) * 1000);
+    }
+    if (offHeapMegabytes != null) {
+      // before the journal is replayed, which sets up the shows
+      try {
+        service.setSeatRegion(SeatRegion.ofMegabytes(Long.parseLong(offHeapMegabytes)));
+      } catch (IllegalArgumentException e) {
+        System.err.println("Booking system failed: " + e.getMessage());
+        return;
+      }
+    }
+    if (statsInterval != null) {
+      printStatsPeriodically(service.getStats(), Long.parseLong(statsInterval));
+    }
+    try (Snapshot snapshot =
+            snapshotFile != null ? Snapshot.open(Paths.get(snapshotFile), service) : null;
+        Journal journal =
+            journalFile != null ? Journal.open(Paths.get(journalFile), service) : null) {
+      service.setJournal(journal);
+      if (shardCount != null) {
+        service.setShards(Integer.parseInt(shardCount));
+      }
+      // only this machine can connect unless an address is given
+      InetAddress address =
+          bindAddress != null
+              ? InetAddress.getByName(bindAddress)
+              : InetAddress.getLoopbackAddress();
+      HttpApiServer http =
+          httpPort != null
+              ? new HttpApiServer(
+                  service, new InetSocketAddress(address, Integer.parseInt(httpPort)))
+              : null;
+      try {
+        run(port, address, files, service);
+      } finally {
+        if (http != null) {
+          http.close();
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Booking system failed: " + e.getMessage());
+    }
+  }
+
+  private static void run(
+      String port, InetAddress address, List<String> files, BookingService service)
+      throws IOException {
+    if (port != null) {
+      runServer(new InetSocketAddress(address, Integer.parseInt(port)), service);
+    } else if (!files.isEmpty()) {
+      runBatch(files, service);
+    } else {
+      runConsole(service);
+    }
+  }
+
+  private static void printStatsPeriodically(CommandStats stats, long seconds) {
+    ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              Thread thread = new Thread(task, "stats");
+              thread.setDaemon(true);
+              return thread;
+            });
+    timer.scheduleAtFixedRate(() -> stats.print(System.err), seconds, seconds, TimeUnit.SECONDS);
+  }
+
+  private static void runConsole(BookingService service) {
     System.out.println("Welcome to Booking a Show!");
     printCommands();
     System.out.println(MSG_MODE_ADMIN);
     System.out.print(">> ");
 
-    boolean isAdminMode = true;
-    Map<Integer, Show> showMap = new HashMap<>();
-    Map<Integer, Ticket> ticketMap = new HashMap<>();
-    int ticketCount = 1;
+    CommandSession session = new CommandSession(service);
 
     Scanner sc = new Scanner(System.in);
     String input = sc.nextLine();
-    while (!input.equalsIgnoreCase(COMMAND_EXIT)) {
-      InputParam param;
-      try {
-        Show show;
-        Ticket ticket;
-        param = checkInput(input, showMap, ticketMap, isAdminMode);
-        switch (param.getCommand()) {
-          case COMMAND_MODE:
-            if (!param.isAdmin()) {
-              isAdminMode = false;
-              System.out.println(MSG_MODE_BUYER);
-            } else {
-              isAdminMode = true;
-              System.out.println(MSG_MODE_ADMIN);
-            }
-            break;
-
-          case COMMAND_SETUP:
-            show =
-                new Show(
-                    param.getShowNum(),
-                    param.getTotalRows(),
-                    param.getTotalSeats(),
-                    param.getCancellationWindow());
-            showMap.put(param.getShowNum(), show);
-            System.out.println(MSG_SETUP);
-            break;
-
-          case COMMAND_VIEW:
-            System.out.println(showMap.get(param.getShowNum()));
-            break;
-
-          case COMMAND_AVAILABILITY:
-            showMap.get(param.getShowNum()).printAvailability();
-            break;
-
-          case COMMAND_BOOK:
-            show = showMap.get(param.getShowNum());
-            for (int i = 0; i < param.getSeats().size(); i++) {
-              int row = param.getSeats().get(i).toUpperCase().charAt(0) - 'A';
-              int col = Integer.parseInt(param.getSeats().get(i).substring(1)) - 1;
-              show.setOccupiedSeats(row, col, true);
-            }
-            int uniqueTicket = ticketCount++;
-            ticket =
-                new Ticket(
-                    uniqueTicket,
-                    param.getPhoneNum(),
-                    param.getShowNum(),
-                    param.getSeats(),
-                    Instant.now());
-            show.addTicket(ticket);
-            ticketMap.put(uniqueTicket, ticket);
-            System.out.println(MSG_BOOK + uniqueTicket);
-            break;
-
-          case COMMAND_CANCEL:
-            ticket = ticketMap.get(param.getTicketNum());
-            show = showMap.get(ticket.getShowNum());
-            long durationInMins =
-                Duration.between(ticket.getTimestamp(), Instant.now()).toMinutes();
-            if (durationInMins <= show.getCancellationWindow()) {
-              for (int i = 0; i < ticket.getSeats().size(); i++) {
-                int row = ticket.getSeats().get(i).toUpperCase().charAt(0) - 'A';
-                int col = Integer.parseInt(ticket.getSeats().get(i).substring(1)) - 1;
-                show.setOccupiedSeats(row, col, false);
-              }
-              show.removeTicket(ticket);
-              ticketMap.remove(param.getTicketNum());
-              System.out.println(MSG_CANCEL_SUCCESS + param.getTicketNum());
-            } else {
-              System.out.println(
-                  MSG_CANCEL_FAILURE + (int) (durationInMins - show.getCancellationWindow()));
-            }
-            break;
-        }
-      } catch (Exception e) {
-        System.out.println(ERROR_MSG_INVALID_INPUT + e.getMessage());
-        printCommands();
-      }
-
+    while (session.execute(input, System.out)) {
       System.out.print(">> ");
       input = sc.nextLine();
     }
   }
 
+  private static void runServer(InetSocketAddress address, BookingService service)
+      throws IOException {
+    try (CommandServer server = new CommandServer(service, address)) {
+      System.out.println("-- Listening for commands on port " + server.getPort());
+      server.run();
+    }
+  }
+
+  private static void runBatch(List<String> files, BookingService service) throws IOException {
+    OutputStream out =
+        files.size() > 1
+            ? new FileOutputStream(files.get(1))
+            : new FileOutputStream(FileDescriptor.out);
+    try {
+      BatchRunner.run(Paths.get(files.get(0)), out, new CommandSession(service));
+    } finally {
+      out.close();
+    }
+  }
+
   /**
    * Checks if the String input contains invalid commands/parameters, missing parameters, parameters
-   * in wrong format
+   * in wrong format. The checks against current bookings are repeated by the BookingService when
+   * the command is applied, as other buyers may book in between
    *
    * @return the InputParam object with valid inputs
    * @exception NumberFormatException if there is an input which is required to be a number but is
    *     not a parsable integer IllegalArgumentException if there are any missing input parameters
    *     or invalid commands
    */
-  public static InputParam checkInput(
-      String input, Map<Integer, Show> showMap, Map<Integer, Ticket> ticketMap, boolean isAdminMode)
+  public static InputParam checkInput(String input, BookingService service, boolean isAdminMode)
       throws Exception {
-    List<String> cleanInput = new ArrayList<>();
-    String[] parts = input.split(" ");
-    for (int i = 0; i < parts.length; i++) {
-      if (!parts[i].isEmpty() && !parts[i].equals(" ")) {
-        cleanInput.add(parts[i]);
-      }
-    }
-    if (cleanInput.size() < 2) {
+    return checkInput(new CommandTokenizer().reset(input), service, isAdminMode);
+  }
+
+  /**
+   * Same as checkInput(String, BookingService, boolean) for a line that has already been
+   * tokenized, so that a caller processing many lines can reuse one tokenizer
+   */
+  public static InputParam checkInput(
+      CommandTokenizer tokens, BookingService service, boolean isAdminMode) throws Exception {
+    if (tokens.size() == 0) {
       throw new IllegalArgumentException();
     }
 
     InputParam param = new InputParam();
-    param.setCommand(cleanInput.get(0).toUpperCase());
+    String command = tokens.match(0, COMMANDS);
+    if (command == null) {
+      throw new IllegalArgumentException(ERROR_MSG_COMMAND);
+    }
+    param.setCommand(command);
     int input1;
     int input2;
     int input3;
     int input4;
     switch (param.getCommand()) {
       case COMMAND_MODE:
-        if (cleanInput.size() != 2
-            || !(cleanInput.get(1).equalsIgnoreCase(BUYER)
-                || cleanInput.get(1).equalsIgnoreCase(ADMIN))) {
+        if (tokens.size() != 2
+            || !(tokens.equalsIgnoreCase(1, BUYER) || tokens.equalsIgnoreCase(1, ADMIN))) {
           throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
         }
-        param.setAdmin(cleanInput.get(1).equalsIgnoreCase(ADMIN));
+        param.setAdmin(tokens.equalsIgnoreCase(1, ADMIN));
         break;
 
       case COMMAND_SETUP:
         if (!isAdminMode) {
           throw new IllegalArgumentException(ERROR_MSG_MODE);
         }
-        if (cleanInput.size() != 5) {
+        if (tokens.size() != 5) {
           throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
         }
-        input1 = Integer.parseInt(cleanInput.get(1));
+        input1 = tokens.parseInt(1);
         if (input1 <= 0) {
           throw new IllegalArgumentException(ERROR_MSG_INVALID_SHOW_NUMBER);
         }
-        if (showMap.containsKey(input1)) {
+        if (service.getShow(input1) != null) {
           throw new IllegalArgumentException(ERROR_MSG_DUPLICATE_SHOW);
         }
-        input2 = Integer.valueOf(cleanInput.get(2));
+        input2 = tokens.parseInt(2);
         if (input2 <= 0) {
           throw new IllegalArgumentException(ERROR_MSG_INVALID_ROW);
         }
         if (input2 > MAX_ROWS) {
           throw new IllegalArgumentException(ERROR_MSG_EXCEED_ROW_LIMIT);
         }
-        input3 = Integer.valueOf(cleanInput.get(3));
+        input3 = tokens.parseInt(3);
         if (input3 <= 0) {
           throw new IllegalArgumentException(ERROR_MSG_INVALID_SEAT);
         }
         if (input3 > MAX_SEATS) {
           throw new IllegalArgumentException(ERROR_MSG_EXCEED_SEAT_LIMIT);
         }
-        input4 = Integer.valueOf(cleanInput.get(4));
+        input4 = tokens.parseInt(4);
         if (input4 <= 0) {
           throw new IllegalArgumentException(ERROR_MSG_INVALID_WINDOW);
         }
@@ -227,77 +360,114 @@ public class BookingASystem {
         break;
 
       case COMMAND_VIEW:
+        // optionally a page of tickets: those numbered after a ticket, up to a number of them
         if (!isAdminMode) {
           throw new IllegalArgumentException(ERROR_MSG_MODE);
         }
-        if (cleanInput.size() != 2) {
+        if (tokens.size() != 2 && tokens.size() != 4) {
           throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
         }
-        input1 = Integer.parseInt(cleanInput.get(1));
-        if (!showMap.containsKey(input1)) {
+        input1 = tokens.parseInt(1);
+        if (service.getShow(input1) == null) {
           throw new IllegalArgumentException(ERROR_MSG_SHOW_NUMBER);
         }
         param.setShowNum(input1);
+        if (tokens.size() == 4) {
+          input2 = tokens.parseInt(2);
+          input3 = tokens.parseInt(3);
+          if (input2 < 0 || input3 <= 0) {
+            throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+          }
+          param.setTicketNum(input2);
+          param.setViewLimit(input3);
+        }
         break;
 
       case COMMAND_AVAILABILITY:
         if (isAdminMode) {
           throw new IllegalArgumentException(ERROR_MSG_MODE);
         }
-        if (cleanInput.size() != 2) {
+        if (tokens.size() != 2) {
           throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
         }
-        input1 = Integer.parseInt(cleanInput.get(1));
-        if (!showMap.containsKey(input1)) {
+        input1 = tokens.parseInt(1);
+        if (service.getShow(input1) == null) {
           throw new IllegalArgumentException(ERROR_MSG_SHOW_NUMBER);
         }
         param.setShowNum(input1);
         break;
 
+      case COMMAND_SEATSLEFT:
+        if (isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() != 2) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        input1 = tokens.parseInt(1);
+        if (service.getShow(input1) == null) {
+          throw new IllegalArgumentException(ERROR_MSG_SHOW_NUMBER);
+        }
+        param.setShowNum(input1);
+        break;
+
+      case COMMAND_FINDSHOWS:
+        if (isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() != 2) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        input1 = tokens.parseInt(1);
+        if (input1 <= 0) {
+          throw new IllegalArgumentException(ERROR_MSG_INVALID_SEAT);
+        }
+        param.setSeatCount(input1);
+        break;
+
       case COMMAND_BOOK:
+      case COMMAND_HOLD:
+        // the seats are either labels or a number of seats to be picked
         if (isAdminMode) {
           throw new IllegalArgumentException(ERROR_MSG_MODE);
         }
-        if (cleanInput.size() != 4) {
+        if (tokens.size() != 4) {
           throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
         }
 
-        List<String> seatList = new ArrayList<>();
-        input1 = Integer.parseInt(cleanInput.get(1));
-        Show show;
-        if (showMap.containsKey(input1)) {
-          show = showMap.get(input1);
-          String seats = cleanInput.get(3);
-          String[] seatParts = seats.split(",");
-          for (int i = 0; i < seatParts.length; i++) {
-            if (!seatParts[i].isEmpty() && !seatParts[i].equals(" ") && !seatParts[i].equals(",")) {
-              int row = seatParts[i].toUpperCase().charAt(0) - 'A';
-              int col = Integer.parseInt(seatParts[i].substring(1)) - 1;
-              if (row <= MAX_ROWS && col <= MAX_SEATS && !show.getOccupiedSeats()[row][col]) {
-                seatList.add(seatParts[i]);
-              } else {
-                throw new IllegalArgumentException(ERROR_MSG_SEAT + seatParts[i]);
-              }
+        int[] seatList = null;
+        input1 = tokens.parseInt(1);
+        Show show = service.getShow(input1);
+        if (show != null && Character.isDigit(tokens.charAt(3, 0))) {
+          // a number of seats instead of seat labels, the best block is found when booking
+          int seatCount = tokens.parseInt(3);
+          if (seatCount <= 0) {
+            throw new IllegalArgumentException(ERROR_MSG_INVALID_SEAT);
+          }
+          if (seatCount > show.getFreeSeats()) {
+            throw new IllegalArgumentException(ERROR_MSG_NOT_ENOUGH_SEATS);
+          }
+          param.setSeatCount(seatCount);
+        } else if (show != null) {
+          int seatCount = tokens.splitSeats(3);
+          seatList = new int[seatCount];
+          for (int i = 0; i < seatCount; i++) {
+            int seat = tokens.seatCode(i);
+            int row = Seats.row(seat);
+            int col = Seats.col(seat);
+            if (seat >= 0 && show.isValidSeat(row, col) && !show.getOccupiedSeats(row, col)) {
+              seatList[i] = seat;
+            } else {
+              throw new IllegalArgumentException(ERROR_MSG_SEAT + tokens.seatLabel(i));
             }
           }
         } else {
           throw new IllegalArgumentException(ERROR_MSG_SHOW_NUMBER);
         }
 
-        input2 = Integer.valueOf(cleanInput.get(2));
-        String phoneNumStr = cleanInput.get(2);
-        if (input2 <= 0
-            || phoneNumStr.length() != 8
-            || !(phoneNumStr.startsWith("6")
-                || phoneNumStr.startsWith("8")
-                || phoneNumStr.startsWith("9"))) {
-          throw new IllegalArgumentException(ERROR_MSG_INVALID_PHONE_NUMBER);
-        }
-
-        for (Ticket tik : show.getTickets()) {
-          if (tik.getPhoneNum() == input2) {
-            throw new IllegalArgumentException(ERROR_MSG_DUPLICATE_PHONE);
-          }
+        input2 = parsePhoneNum(tokens, 2);
+        if (show.hasPhoneNum(input2)) {
+          throw new IllegalArgumentException(ERROR_MSG_DUPLICATE_PHONE);
         }
 
         param.setShowNum(input1);
@@ -305,27 +475,129 @@ public class BookingASystem {
         param.setSeats(seatList);
         break;
 
+      case COMMAND_BOOKBATCH:
+        // pairs of phone number and seats, each checked like a BOOK but rejected on its own
+        if (isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() < 4 || tokens.size() % 2 != 0) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        input1 = tokens.parseInt(1);
+        if (service.getShow(input1) == null) {
+          throw new IllegalArgumentException(ERROR_MSG_SHOW_NUMBER);
+        }
+        BookingBatch batch = new BookingBatch(input1);
+        for (int i = 2; i < tokens.size(); i += 2) {
+          try {
+            int phoneNum;
+            try {
+              phoneNum = parsePhoneNum(tokens, i);
+            } catch (NumberFormatException e) {
+              throw new IllegalArgumentException(ERROR_MSG_INVALID_PHONE_NUMBER);
+            }
+            if (Character.isDigit(tokens.charAt(i + 1, 0))) {
+              int seatCount;
+              try {
+                seatCount = tokens.parseInt(i + 1);
+              } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(ERROR_MSG_INVALID_SEAT);
+              }
+              if (seatCount <= 0) {
+                throw new IllegalArgumentException(ERROR_MSG_INVALID_SEAT);
+              }
+              batch.addBest(phoneNum, seatCount);
+            } else {
+              // taken and out of range seats are found by the booking's sweep
+              int seatCount = tokens.splitSeats(i + 1);
+              int[] entrySeats = new int[seatCount];
+              for (int j = 0; j < seatCount; j++) {
+                entrySeats[j] = tokens.seatCode(j);
+                if (entrySeats[j] < 0) {
+                  throw new IllegalArgumentException(ERROR_MSG_SEAT + tokens.seatLabel(j));
+                }
+              }
+              batch.add(phoneNum, entrySeats);
+            }
+          } catch (IllegalArgumentException e) {
+            batch.addRejected(tokens.token(i), e.getMessage());
+          }
+        }
+        param.setShowNum(input1);
+        param.setBatch(batch);
+        break;
+
       case COMMAND_CANCEL:
         if (isAdminMode) {
           throw new IllegalArgumentException(ERROR_MSG_MODE);
         }
-        if (cleanInput.size() != 3) {
+        if (tokens.size() != 3) {
           throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
         }
-        int ticketNum = Integer.parseInt(cleanInput.get(1));
-        if (ticketMap.containsKey(ticketNum)) {
+        int ticketNum = tokens.parseInt(1);
+        Ticket ticket = service.getTicket(ticketNum);
+        if (ticket != null) {
           param.setTicketNum(ticketNum);
         } else {
           throw new IllegalArgumentException(ERROR_MSG_TICKET_NUMBER);
         }
-        input2 = Integer.parseInt(cleanInput.get(2));
-        if (ticketMap.get(ticketNum).getPhoneNum() == input2) {
+        input2 = tokens.parseInt(2);
+        if (ticket.getPhoneNum() == input2) {
           param.setPhoneNum(input2);
         } else {
           throw new IllegalArgumentException(ERROR_MSG_MISMATCH_TICKET_PHONE);
         }
         break;
 
+      case COMMAND_MYTICKETS:
+        if (isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() != 2) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        param.setPhoneNum(parsePhoneNum(tokens, 1));
+        break;
+
+      case COMMAND_CONFIRM:
+        if (isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() != 3) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        int holdNum = tokens.parseInt(1);
+        Hold hold = service.getHold(holdNum);
+        if (hold == null) {
+          throw new IllegalArgumentException(ERROR_MSG_HOLD_NUMBER);
+        }
+        input2 = tokens.parseInt(2);
+        if (hold.getPhoneNum() != input2) {
+          throw new IllegalArgumentException(ERROR_MSG_MISMATCH_HOLD_PHONE);
+        }
+        param.setHoldNum(holdNum);
+        param.setPhoneNum(input2);
+        break;
+
+      case COMMAND_CHECKPOINT:
+        if (!isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() != 2) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        param.setFileName(tokens.token(1));
+        break;
+
+      case COMMAND_STATS:
+        if (!isAdminMode) {
+          throw new IllegalArgumentException(ERROR_MSG_MODE);
+        }
+        if (tokens.size() != 1) {
+          throw new IllegalArgumentException(ERROR_MSG_WRONG_PARAM);
+        }
+        break;
+
       default:
         throw new IllegalArgumentException(ERROR_MSG_COMMAND);
     }
@@ -333,92 +605,475 @@ public class BookingASystem {
     return param;
   }
 
+  /**
+   * Parses the token as a phone number of 8 digits starting with 6, 8 or 9
+   *
+   * @exception IllegalArgumentException if the token is not such a phone number
+   */
+  private static int parsePhoneNum(CommandTokenizer tokens, int index) {
+    int phoneNum = tokens.parseInt(index);
+    char prefix = tokens.charAt(index, 0);
+    if (phoneNum <= 0
+        || tokens.length(index) != 8
+        || !(prefix == '6' || prefix == '8' || prefix == '9')) {
+      throw new IllegalArgumentException(ERROR_MSG_INVALID_PHONE_NUMBER);
+    }
+    return phoneNum;
+  }
+
+  /**
+   * Returns the name of the ERROR_MSG_ constant, without the prefix, that the exception's message
+   * comes from, e.g. SEAT for "Seat is invalid: Z1"
+   *
+   * @return the code, INVALID_NUMBER for an unparsable number, WRONG_PARAM for an exception with
+   *     no message or INVALID_INPUT if the message is not one of the constants
+   */
+  public static String errorCode(Exception e) {
+    if (e instanceof NumberFormatException) {
+      return "INVALID_NUMBER";
+    }
+    String message = e.getMessage();
+    if (message == null) {
+      return "WRONG_PARAM";
+    }
+    String code = ERROR_CODES.get(message);
+    if (code != null) {
+      return code;
+    }
+    // messages ending in a colon are followed by the offending value
+    for (Map.Entry<String, String> entry : ERROR_CODES.entrySet()) {
+      if (entry.getKey().endsWith(": ") && message.startsWith(entry.getKey())) {
+        return entry.getValue();
+      }
+    }
+    return "INVALID_INPUT";
+  }
+
+  private static Map<String, String> errorCodes() {
+    Map<String, String> codes = new HashMap<>();
+    for (Field field : BookingASystem.class.getFields()) {
+      if (field.getName().startsWith(ERROR_MSG_PREFIX)
+          && !field.getName().equals("ERROR_MSG_INVALID_INPUT")
+          && field.getType() == String.class) {
+        try {
+          codes.put((String) field.get(null), field.getName().substring(ERROR_MSG_PREFIX.length()));
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return codes;
+  }
+
   /** Prints list of commands to assist user in using the program */
   public static void printCommands() {
-    System.out.println();
-    System.out.println("List of Commands:");
+    printCommands(System.out);
+  }
 
-    System.out.println(COMMAND_MODE + " <Type of User>");
-    System.out.println("    Type of User: Admin/Buyer, to switch between these two users");
-    System.out.println("    **Default type of user is Admin");
-    System.out.println(
+  /** Prints list of commands to the given stream */
+  public static void printCommands(PrintStream out) {
+    out.println();
+    out.println("List of Commands:");
+
+    out.println(COMMAND_MODE + " <Type of User>");
+    out.println("    Type of User: Admin/Buyer, to switch between these two users");
+    out.println("    **Default type of user is Admin");
+    out.println(
         COMMAND_SETUP
             + " <Show Number> <Number of Rows> <Number of seats per row> <Cancellation window in minutes>");
-    System.out.println("    To setup the number of seats per show");
-    System.out.println(COMMAND_VIEW + " <Show Number>");
-    System.out.println(
+    out.println("    To setup the number of seats per show");
+    out.println(COMMAND_VIEW + " <Show Number> [<After Ticket#> <Number of tickets>]");
+    out.println(
         "    To display Show Number, Ticket#, Buyer Phone#, Seat Numbers allocated to the buyer");
-    System.out.println(COMMAND_AVAILABILITY + " <Show Number>");
-    System.out.println("    To list all available seat numbers for a show");
-    System.out.println(COMMAND_BOOK + " <Show Number> <Phone#> <Comma separated list of seats>");
-    System.out.println("    To book a ticket");
-    System.out.println(COMMAND_CANCEL + " <Ticket#> <Phone#>");
-    System.out.println("    To cancel a ticket");
-    System.out.println(COMMAND_EXIT);
-    System.out.println("    To exit the program");
-    System.out.println();
+    out.println("    **Give a Ticket# and a count to display that many tickets after the Ticket#");
+    out.println(COMMAND_AVAILABILITY + " <Show Number>");
+    out.println("    To list all available seat numbers for a show");
+    out.println(COMMAND_SEATSLEFT + " <Show Number>");
+    out.println("    To display how many seats are left for a show and how many are together");
+    out.println(COMMAND_FINDSHOWS + " <Number of seats>");
+    out.println("    To find the shows with that many seats left, together in a row or apart");
+    out.println(COMMAND_BOOK + " <Show Number> <Phone#> <Comma separated list of seats>");
+    out.println("    To book a ticket, or give a number of seats to book the best seats together");
+    out.println(COMMAND_BOOKBATCH + " <Show Number> <Phone#> <Seats> [<Phone#> <Seats> ...]");
+    out.println("    To book a ticket for each phone number at once, seats as for " + COMMAND_BOOK);
+    out.println(COMMAND_CANCEL + " <Ticket#> <Phone#>");
+    out.println("    To cancel a ticket");
+    out.println(COMMAND_MYTICKETS + " <Phone#>");
+    out.println("    To list the tickets of a phone number for every show");
+    out.println(COMMAND_HOLD + " <Show Number> <Phone#> <Comma separated list of seats>");
+    out.println("    To hold seats for a limited time before confirming them");
+    out.println(COMMAND_CONFIRM + " <Hold#> <Phone#>");
+    out.println("    To book the held seats as a ticket");
+    out.println(COMMAND_CHECKPOINT + " <Snapshot file>");
+    out.println("    To save all shows and tickets to a snapshot file for a fast restart");
+    out.println(COMMAND_STATS);
+    out.println("    To display the latency and outcomes of every command so far");
+    out.println(COMMAND_EXIT);
+    out.println("    To exit the program");
+    out.println();
   }
 }
 
+/**
+ * A show with its seat map and tickets. All state is guarded by the show's monitor; callers that
+ * combine several calls into one step must hold the monitor themselves. The tickets themselves are
+ * kept in a TicketTable, the show only keeps their numbers in booking order.
+ */
 class Show {
   private int showNum;
   private int totalRows;
   private int totalSeats;
   private int cancellationWindow;
 
-  private boolean[][] occupiedSeats;
-  private List<Ticket> tickets;
+  private SeatMap occupiedSeats;
+  private TicketTable ticketTable;
+  // ascending, cancelled numbers are skipped and dropped once they make up half of the array
+  private int[] ticketNums;
+  private int ticketCount;
+  private int cancelledCount;
+  private IntIntHashMap ticketsByPhone;
+  private IntHashMap<Hold> holdsByPhone;
+
+  // tickets rendered per turn of the monitor when VIEW is streamed
+  static final int VIEW_CHUNK = 256;
+
+  // bumped on every change so that rendered AVAILABILITY text can be reused until then
+  private int version;
+  private TextBuffer availability;
+  private int availabilityVersion = -1;
+
+  // free seats and longest free run the show is filed under in a CapacityIndex, -1 if not filed
+  private int indexedFreeSeats = -1;
+  private int indexedFreeRun = -1;
 
   public Show(int showNum, int totalRows, int totalSeats, int cancellationWindow) {
+    this(showNum, totalRows, totalSeats, cancellationWindow, new TicketTable());
+  }
+
+  public Show(
+      int showNum,
+      int totalRows,
+      int totalSeats,
+      int cancellationWindow,
+      TicketTable ticketTable) {
+    this(showNum, totalRows, totalSeats, cancellationWindow, ticketTable, null);
+  }
+
+  /** Keeps the seats in the region if it is not null and has room, see SeatMap */
+  public Show(
+      int showNum,
+      int totalRows,
+      int totalSeats,
+      int cancellationWindow,
+      TicketTable ticketTable,
+      SeatRegion seatRegion) {
     this.showNum = showNum;
     this.totalRows = totalRows;
     this.totalSeats = totalSeats;
     this.cancellationWindow = cancellationWindow;
 
-    occupiedSeats = new boolean[totalRows][totalSeats];
-    tickets = new ArrayList<>();
+    occupiedSeats = new SeatMap(totalRows, totalSeats, seatRegion);
+    this.ticketTable = ticketTable;
+    ticketNums = new int[8];
+    ticketsByPhone = new IntIntHashMap();
+    holdsByPhone = new IntHashMap<>();
+  }
+
+  public int getShowNum() {
+    return showNum;
   }
 
   public int getCancellationWindow() {
     return cancellationWindow;
   }
 
-  public boolean[][] getOccupiedSeats() {
-    return occupiedSeats;
+  public int getTotalRows() {
+    return totalRows;
+  }
+
+  public int getTotalSeats() {
+    return totalSeats;
+  }
+
+  public boolean isValidSeat(int row, int col) {
+    return occupiedSeats.isValid(row, col);
+  }
+
+  public synchronized boolean getOccupiedSeats(int row, int col) {
+    return occupiedSeats.isOccupied(row, col);
+  }
+
+  public synchronized void setOccupiedSeats(int row, int col, boolean flag) {
+    if (occupiedSeats.set(row, col, flag)) {
+      version++;
+    }
+  }
+
+  public int getWordsPerRow() {
+    return occupiedSeats.getWordsPerRow();
+  }
+
+  /** Returns the occupancy bits of a word of the row, see SeatMap.word */
+  public synchronized long getOccupiedWord(int row, int w) {
+    return occupiedSeats.word(row, w);
   }
 
-  public void setOccupiedSeats(int row, int col, boolean flag) {
-    occupiedSeats[row][col] = flag;
+  public synchronized void setOccupiedWord(int row, int w, long bits) {
+    if (occupiedSeats.word(row, w) != bits) {
+      occupiedSeats.setWord(row, w, bits);
+      version++;
+    }
+  }
+
+  public synchronized int getFreeSeats(int row) {
+    return occupiedSeats.getFreeSeats(row);
+  }
+
+  public synchronized int getFreeSeats() {
+    return occupiedSeats.getFreeSeats();
+  }
+
+  /** Returns the most free seats next to each other in a row */
+  public synchronized int getLongestFreeRun() {
+    return occupiedSeats.getLongestFreeRun();
+  }
+
+  public int getIndexedFreeSeats() {
+    return indexedFreeSeats;
+  }
+
+  public int getIndexedFreeRun() {
+    return indexedFreeRun;
+  }
+
+  /** Records the keys the show is filed under, only called by CapacityIndex */
+  public void setIndexedCapacity(int freeSeats, int freeRun) {
+    indexedFreeSeats = freeSeats;
+    indexedFreeRun = freeRun;
+  }
+
+  /** Finds the best free seats for a group without taking them, see SeatMap.findBlock */
+  public synchronized int[] findBestSeats(int count) {
+    return occupiedSeats.findBlock(count);
+  }
+
+  /** Returns copies of the live tickets in booking order */
+  public synchronized List<Ticket> getTickets() {
+    List<Ticket> result = new ArrayList<>(ticketCount - cancelledCount);
+    for (int i = 0; i < ticketCount; i++) {
+      if (ticketTable.getShowNum(ticketNums[i]) == showNum) {
+        result.add(ticketTable.get(ticketNums[i]));
+      }
+    }
+    return result;
+  }
+
+  /** Returns up to limit live tickets numbered above afterTicket, in ticket number order */
+  public synchronized List<Ticket> getTicketsAfter(int afterTicket, int limit) {
+    List<Ticket> result = new ArrayList<>(Math.min(limit, ticketCount));
+    for (int i = indexAfter(afterTicket); i < ticketCount && result.size() < limit; i++) {
+      if (ticketTable.getShowNum(ticketNums[i]) == showNum) {
+        result.add(ticketTable.get(ticketNums[i]));
+      }
+    }
+    return result;
+  }
+
+  /** Returns true if the phone number has a ticket or a hold for the show */
+  public synchronized boolean hasPhoneNum(int phoneNum) {
+    return ticketsByPhone.containsKey(phoneNum) || holdsByPhone.containsKey(phoneNum);
+  }
+
+  public synchronized void addTicket(Ticket ticket) {
+    addTicket(
+        ticket.getTicketNum(),
+        ticket.getPhoneNum(),
+        ticket.getSeats(),
+        ticket.getTimestamp().toEpochMilli());
+  }
+
+  /** Stores a ticket for seats already occupied in the ticket table */
+  public synchronized void addTicket(int ticketNum, int phoneNum, int[] seats, long epochMillis) {
+    ticketTable.put(ticketNum, phoneNum, showNum, seats, epochMillis);
+    if (ticketCount == ticketNums.length) {
+      compactTickets();
+    }
+    // tickets of a show are numbered in booking order, so this is almost always an append
+    int i = ticketCount;
+    while (i > 0 && ticketNums[i - 1] > ticketNum) {
+      i--;
+    }
+    if (i == 0 || ticketNums[i - 1] != ticketNum) {
+      System.arraycopy(ticketNums, i, ticketNums, i + 1, ticketCount - i);
+      ticketNums[i] = ticketNum;
+      ticketCount++;
+    }
+    ticketsByPhone.put(phoneNum, ticketNum);
+    version++;
+  }
+
+  /** Removes a ticket from the ticket table without freeing its seats */
+  public synchronized void removeTicket(int ticketNum) {
+    if (ticketTable.getShowNum(ticketNum) != showNum) {
+      return;
+    }
+    int phoneNum = ticketTable.getPhoneNum(ticketNum);
+    ticketTable.remove(ticketNum);
+    if (ticketsByPhone.get(phoneNum) == ticketNum) {
+      ticketsByPhone.remove(phoneNum);
+    }
+    cancelledCount++;
+    version++;
   }
 
-  public List<Ticket> getTickets() {
-    return tickets;
+  public synchronized void addHold(Hold hold) {
+    holdsByPhone.put(hold.getPhoneNum(), hold);
   }
 
-  public void addTicket(Ticket ticket) {
-    tickets.add(ticket);
+  public synchronized void removeHold(Hold hold) {
+    if (holdsByPhone.get(hold.getPhoneNum()) == hold) {
+      holdsByPhone.remove(hold.getPhoneNum());
+    }
   }
 
-  public void removeTicket(Ticket ticket) {
-    tickets.remove(ticket);
+  public synchronized void forEachHold(Consumer<Hold> action) {
+    holdsByPhone.forEachValue(action);
   }
 
   public void printAvailability() {
-    System.out.println("-- Available Seats for Show Number " + showNum + ":");
+    printAvailability(System.out);
+  }
+
+  public synchronized void printAvailability(PrintStream out) {
+    if (availabilityVersion != version) {
+      renderAvailability();
+      availabilityVersion = version;
+    }
+    availability.writeTo(out);
+  }
+
+  /** Prints the VIEW text of the show, the same as printing toString() with println */
+  public void printView(PrintStream out) {
+    printView(out, 0, Integer.MAX_VALUE);
+    out.println();
+  }
+
+  /**
+   * Prints the VIEW text of up to limit live tickets numbered above afterTicket, in ticket number
+   * order. The text is rendered a chunk of tickets at a time under the monitor and written out
+   * between chunks, so the text of a large show is never built whole and bookings carry on while
+   * it is printed. As tickets are ordered by number, a page that resumes after the last ticket of
+   * the one before neither repeats nor skips a ticket that stayed live.
+   *
+   * @return the number of the last ticket printed, afterTicket if none
+   */
+  public int printView(PrintStream out, int afterTicket, int limit) {
+    TextBuffer buffer = new TextBuffer(64 + Math.min(limit, VIEW_CHUNK) * 64);
+    buffer.append("-- List of Shows: \nShow{").append("showNum=").append(showNum).append(",\n");
+    buffer.append("\ttickets=[");
+    int last = afterTicket;
+    int printed = 0;
+    boolean more = true;
+    while (more && printed < limit) {
+      int chunkEnd = printed + Math.min(VIEW_CHUNK, limit - printed);
+      synchronized (this) {
+        int i = indexAfter(last);
+        for (; i < ticketCount && printed < chunkEnd; i++) {
+          int ticketNum = ticketNums[i];
+          if (ticketTable.getShowNum(ticketNum) != showNum) {
+            continue;
+          }
+          if (printed > 0) {
+            buffer.append(", ");
+          }
+          Ticket.appendTo(
+              buffer,
+              ticketNum,
+              ticketTable.getPhoneNum(ticketNum),
+              ticketTable.getSeats(ticketNum));
+          last = ticketNum;
+          printed++;
+        }
+        more = i < ticketCount;
+      }
+      buffer.writeTo(out);
+      buffer.reset();
+    }
+    buffer.append(']').append('}').writeTo(out);
+    return last;
+  }
+
+  /** Returns true if the show has a live ticket numbered above the given one */
+  public synchronized boolean hasTicketsAfter(int ticketNum) {
+    for (int i = indexAfter(ticketNum); i < ticketCount; i++) {
+      if (ticketTable.getShowNum(ticketNums[i]) == showNum) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void renderAvailability() {
+    if (availability == null) {
+      // a free seat prints as its row letters, seat number and a space
+      int seatWidth = (totalRows > 26 ? 2 : 1) + String.valueOf(totalSeats).length() + 1;
+      availability = new TextBuffer(64 + totalRows * (totalSeats * seatWidth + 2));
+    }
+    TextBuffer buffer = availability.reset();
+    buffer.append("-- Available Seats for Show Number ").append(showNum).append(':').newLine();
     for (int r = 0; r < totalRows; r++) {
-      for (int c = 0; c < totalSeats; c++) {
-        if (!occupiedSeats[r][c]) {
-          StringBuilder builder = new StringBuilder();
-          builder.append((char) ('A' + r));
-          builder.append(c + 1);
-          System.out.print(builder.toString() + " ");
-        } else {
-          System.out.print("XX ");
+      for (int w = 0; w < occupiedSeats.getWordsPerRow(); w++) {
+        long word = occupiedSeats.word(r, w);
+        int base = w << 6;
+        int end = Math.min(64, totalSeats - base);
+        if (word == -1L) {
+          for (int b = 0; b < end; b++) {
+            buffer.append("XX ");
+          }
+          continue;
+        }
+        for (int b = 0; b < end; b++) {
+          if ((word & (1L << b)) == 0) {
+            Seats.appendRow(buffer, r).append(base + b + 1).append(' ');
+          } else {
+            buffer.append("XX ");
+          }
         }
       }
-      System.out.println();
+      buffer.newLine();
     }
-    System.out.println("** Occupied seats are indicated with XX");
+    buffer.append("** Occupied seats are indicated with XX").newLine();
+  }
+
+  /** Drops cancelled ticket numbers, or grows the array if there are few of them */
+  private void compactTickets() {
+    if (cancelledCount * 2 < ticketCount) {
+      ticketNums = Arrays.copyOf(ticketNums, ticketNums.length * 2);
+      return;
+    }
+    int live = 0;
+    for (int i = 0; i < ticketCount; i++) {
+      if (ticketTable.getShowNum(ticketNums[i]) == showNum) {
+        ticketNums[live++] = ticketNums[i];
+      }
+    }
+    ticketCount = live;
+    cancelledCount = 0;
+  }
+
+  /** Returns the index of the first ticket number above the given one */
+  private int indexAfter(int ticketNum) {
+    int low = 0;
+    int high = ticketCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (ticketNums[mid] <= ticketNum) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
   @Override
@@ -435,14 +1090,10 @@ class Show {
   }
 
   @Override
-  public String toString() {
-    return "-- List of Shows: \nShow{"
-        + "showNum="
-        + showNum
-        + ",\n"
-        + "\ttickets="
-        + tickets
-        + '}';
+  public synchronized String toString() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    printView(new PrintStream(bytes), 0, Integer.MAX_VALUE);
+    return new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
   }
 }
 
@@ -450,10 +1101,10 @@ class Ticket {
   private int ticketNum;
   private int phoneNum;
   private int showNum;
-  private List<String> seats;
+  private int[] seats;
   private Instant timestamp;
 
-  public Ticket(int ticketNum, int phoneNum, int showNum, List<String> seats, Instant timestamp) {
+  public Ticket(int ticketNum, int phoneNum, int showNum, int[] seats, Instant timestamp) {
     this.ticketNum = ticketNum;
     this.phoneNum = phoneNum;
     this.showNum = showNum;
@@ -461,6 +1112,17 @@ class Ticket {
     this.timestamp = timestamp;
   }
 
+  public Ticket(int ticketNum, int phoneNum, int showNum, List<String> seats, Instant timestamp) {
+    this(ticketNum, phoneNum, showNum, new int[seats.size()], timestamp);
+    for (int i = 0; i < seats.size(); i++) {
+      this.seats[i] = Seats.parse(seats.get(i));
+    }
+  }
+
+  public int getTicketNum() {
+    return ticketNum;
+  }
+
   public int getPhoneNum() {
     return phoneNum;
   }
@@ -469,7 +1131,8 @@ class Ticket {
     return showNum;
   }
 
-  public List<String> getSeats() {
+  /** Returns the seat codes of the ticket, see Seats */
+  public int[] getSeats() {
     return seats;
   }
 
@@ -487,21 +1150,31 @@ class Ticket {
 
   @Override
   public int hashCode() {
-    return Objects.hash(ticketNum, phoneNum);
+    return 31 * ticketNum + phoneNum;
+  }
+
+  /** Appends the same text as toString() to the buffer */
+  public TextBuffer appendTo(TextBuffer buffer) {
+    return appendTo(buffer, ticketNum, phoneNum, seats);
+  }
+
+  /** Appends the text of a ticket stored in a TicketTable to the buffer */
+  static TextBuffer appendTo(TextBuffer buffer, int ticketNum, int phoneNum, int[] seats) {
+    buffer
+        .append("\n\t\tTicket{")
+        .append("ticketNum=")
+        .append(ticketNum)
+        .append(", ")
+        .append("phoneNum=")
+        .append(phoneNum)
+        .append(", ")
+        .append("seats=");
+    return Seats.appendLabels(buffer, seats).append('}');
   }
 
   @Override
   public String toString() {
-    return "\n\t\tTicket{"
-        + "ticketNum="
-        + ticketNum
-        + ", "
-        + "phoneNum="
-        + phoneNum
-        + ", "
-        + "seats="
-        + seats
-        + '}';
+    return appendTo(new TextBuffer(48 + seats.length * 5)).toString();
   }
 }
 
@@ -516,12 +1189,20 @@ class InputParam {
   private int cancellationWindow;
   // book
   private int phoneNum;
-  private List<String> seats;
-  // cancel
+  private int[] seats;
+  private int seatCount;
+  // cancel, or the ticket a page of view starts after
   private int ticketNum;
+  // view, 0 for all tickets
+  private int viewLimit;
+  // confirm
+  private int holdNum;
+  // checkpoint
+  private String fileName;
+  // bookbatch
+  private BookingBatch batch;
 
   InputParam() {
-    seats = new ArrayList<>();
     isAdmin = true;
   }
 
@@ -581,11 +1262,11 @@ class InputParam {
     this.phoneNum = phoneNum;
   }
 
-  public List<String> getSeats() {
+  public int[] getSeats() {
     return seats;
   }
 
-  public void setSeats(List<String> seats) {
+  public void setSeats(int[] seats) {
     this.seats = seats;
   }
 
@@ -596,4 +1277,45 @@ class InputParam {
   public void setTicketNum(int ticketNum) {
     this.ticketNum = ticketNum;
   }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public int getHoldNum() {
+    return holdNum;
+  }
+
+  public void setHoldNum(int holdNum) {
+    this.holdNum = holdNum;
+  }
+
+  /** Returns the number of seats to book or hold when no seat labels were given, otherwise 0 */
+  public int getSeatCount() {
+    return seatCount;
+  }
+
+  public void setSeatCount(int seatCount) {
+    this.seatCount = seatCount;
+  }
+
+  public int getViewLimit() {
+    return viewLimit;
+  }
+
+  public void setViewLimit(int viewLimit) {
+    this.viewLimit = viewLimit;
+  }
+
+  public BookingBatch getBatch() {
+    return batch;
+  }
+
+  public void setBatch(BookingBatch batch) {
+    this.batch = batch;
+  }
 }
@@ -7,6 +7,9 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Arrays;
 
@@ -20,14 +23,31 @@ public class BookingASystemTest {
           + "    **Default type of user is Admin\n"
           + "SETUP <Show Number> <Number of Rows> <Number of seats per row> <Cancellation window in minutes>\n"
           + "    To setup the number of seats per show\n"
-          + "VIEW <Show Number>\n"
+          + "VIEW <Show Number> [<After Ticket#> <Number of tickets>]\n"
           + "    To display Show Number, Ticket#, Buyer Phone#, Seat Numbers allocated to the buyer\n"
+          + "    **Give a Ticket# and a count to display that many tickets after the Ticket#\n"
           + "AVAILABILITY <Show Number>\n"
           + "    To list all available seat numbers for a show\n"
+          + "SEATSLEFT <Show Number>\n"
+          + "    To display how many seats are left for a show and how many are together\n"
+          + "FINDSHOWS <Number of seats>\n"
+          + "    To find the shows with that many seats left, together in a row or apart\n"
           + "BOOK <Show Number> <Phone#> <Comma separated list of seats>\n"
-          + "    To book a ticket\n"
+          + "    To book a ticket, or give a number of seats to book the best seats together\n"
+          + "BOOKBATCH <Show Number> <Phone#> <Seats> [<Phone#> <Seats> ...]\n"
+          + "    To book a ticket for each phone number at once, seats as for BOOK\n"
           + "CANCEL <Ticket#> <Phone#>\n"
           + "    To cancel a ticket\n"
+          + "MYTICKETS <Phone#>\n"
+          + "    To list the tickets of a phone number for every show\n"
+          + "HOLD <Show Number> <Phone#> <Comma separated list of seats>\n"
+          + "    To hold seats for a limited time before confirming them\n"
+          + "CONFIRM <Hold#> <Phone#>\n"
+          + "    To book the held seats as a ticket\n"
+          + "CHECKPOINT <Snapshot file>\n"
+          + "    To save all shows and tickets to a snapshot file for a fast restart\n"
+          + "STATS\n"
+          + "    To display the latency and outcomes of every command so far\n"
           + "EXIT\n"
           + "    To exit the program\n"
           + "\n"
@@ -40,14 +60,31 @@ public class BookingASystemTest {
           + "    **Default type of user is Admin\n"
           + "SETUP <Show Number> <Number of Rows> <Number of seats per row> <Cancellation window in minutes>\n"
           + "    To setup the number of seats per show\n"
-          + "VIEW <Show Number>\n"
+          + "VIEW <Show Number> [<After Ticket#> <Number of tickets>]\n"
           + "    To display Show Number, Ticket#, Buyer Phone#, Seat Numbers allocated to the buyer\n"
+          + "    **Give a Ticket# and a count to display that many tickets after the Ticket#\n"
           + "AVAILABILITY <Show Number>\n"
           + "    To list all available seat numbers for a show\n"
+          + "SEATSLEFT <Show Number>\n"
+          + "    To display how many seats are left for a show and how many are together\n"
+          + "FINDSHOWS <Number of seats>\n"
+          + "    To find the shows with that many seats left, together in a row or apart\n"
           + "BOOK <Show Number> <Phone#> <Comma separated list of seats>\n"
-          + "    To book a ticket\n"
+          + "    To book a ticket, or give a number of seats to book the best seats together\n"
+          + "BOOKBATCH <Show Number> <Phone#> <Seats> [<Phone#> <Seats> ...]\n"
+          + "    To book a ticket for each phone number at once, seats as for BOOK\n"
           + "CANCEL <Ticket#> <Phone#>\n"
           + "    To cancel a ticket\n"
+          + "MYTICKETS <Phone#>\n"
+          + "    To list the tickets of a phone number for every show\n"
+          + "HOLD <Show Number> <Phone#> <Comma separated list of seats>\n"
+          + "    To hold seats for a limited time before confirming them\n"
+          + "CONFIRM <Hold#> <Phone#>\n"
+          + "    To book the held seats as a ticket\n"
+          + "CHECKPOINT <Snapshot file>\n"
+          + "    To save all shows and tickets to a snapshot file for a fast restart\n"
+          + "STATS\n"
+          + "    To display the latency and outcomes of every command so far\n"
           + "EXIT\n"
           + "    To exit the program\n"
           + "\n";
@@ -126,7 +163,7 @@ public class BookingASystemTest {
 
   @Test
   public void setup_failure_num_rows_exceed() {
-    String input = "SETUP 100 27 10 2\nEXIT\n";
+    String input = "SETUP 100 703 10 2\nEXIT\n";
     InputStream in = new ByteArrayInputStream(input.getBytes());
     System.setIn(in);
 
@@ -164,7 +201,7 @@ public class BookingASystemTest {
 
   @Test
   public void setup_failure_num_seats_exceed() {
-    String input = "SETUP 100 20 11 2\nEXIT\n";
+    String input = "SETUP 100 20 1001 2\nEXIT\n";
     InputStream in = new ByteArrayInputStream(input.getBytes());
     System.setIn(in);
 
@@ -403,6 +440,35 @@ public class BookingASystemTest {
         outputStreamCaptor.toString().trim());
   }
 
+  @Test
+  public void view_pages_resume_after_last_ticket() {
+    String input =
+        "SETUP 100 10 10 60\nMODE BUYER\nBOOK 100 61234567 A1\nBOOK 100 61234568 A2\n"
+            + "BOOK 100 61234569 A3\nBOOK 100 61234570 A4\nCANCEL 2 61234568\nMODE ADMIN\n"
+            + "VIEW 100 0 2\nVIEW 100 3 2\nVIEW 100 1 0\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+    String output = outputStreamCaptor.toString();
+
+    Assert.assertTrue(
+        output.contains(
+            ">> -- List of Shows: \nShow{showNum=100,\n\ttickets=["
+                + ticket(1, 61234567, "A1")
+                + ", "
+                + ticket(3, 61234569, "A3")
+                + "]}\n"
+                + BookingASystem.MSG_VIEW_MORE
+                + "VIEW 100 3 2\n"
+                + ">> -- List of Shows: \nShow{showNum=100,\n\ttickets=["
+                + ticket(4, 61234570, "A4")
+                + "]}\n"
+                + ">> "
+                + BookingASystem.ERROR_MSG_INVALID_INPUT
+                + BookingASystem.ERROR_MSG_WRONG_PARAM));
+  }
+
   @Test
   public void setup_book_failure_show_num() {
     String input = "SETUP 100 10 10 2\nMODE BUYER\nBOOK 200 61234567 D3,D4,D5\nEXIT\n";
@@ -504,6 +570,96 @@ public class BookingASystemTest {
         outputStreamCaptor.toString().trim());
   }
 
+  @Test
+  public void setup_book_failure_seat_out_of_range() {
+    String input = "SETUP 100 10 10 2\nMODE BUYER\nBOOK 100 91234567 A2,D11\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.ERROR_MSG_INVALID_INPUT
+            + BookingASystem.ERROR_MSG_SEAT
+            + "D11"
+            + NEW_LINE
+            + PRINT_TEXT
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void setup_book_failure_duplicate_phone() {
+    String input =
+        "SETUP 100 10 10 2\nMODE BUYER\nBOOK 100 61234567 D3,D4\nBOOK 100 61234567 E1\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.ERROR_MSG_INVALID_INPUT
+            + BookingASystem.ERROR_MSG_DUPLICATE_PHONE
+            + NEW_LINE
+            + PRINT_TEXT
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void setup_book_cancel_book_same_phone_success() {
+    String input =
+        "SETUP 100 10 10 2\nMODE BUYER\nBOOK 100 61234567 D3,D4\nCANCEL 1 61234567\n"
+            + "BOOK 100 61234567 E1\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_CANCEL_SUCCESS
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "2"
+            + NEW_LINE
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
   @Test
   public void setup_book_cancel_availability_success() {
     String input =
@@ -628,4 +784,360 @@ public class BookingASystemTest {
             + USER_INPUT_SIGN,
         outputStreamCaptor.toString().trim());
   }
+
+  @Test
+  public void availability_book_availability_success() {
+    String input =
+        "SETUP 100 2 3 2\nMODE BUYER\nAVAILABILITY 100\nBOOK 100 61234567 B2\nAVAILABILITY 100\n"
+            + "CANCEL 1 61234567\nAVAILABILITY 100\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    String free =
+        ">> -- Available Seats for Show Number 100:\n"
+            + "A1 A2 A3 \n"
+            + "B1 B2 B3 \n"
+            + "** Occupied seats are indicated with XX\n";
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + free
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + ">> -- Available Seats for Show Number 100:\n"
+            + "A1 A2 A3 \n"
+            + "B1 XX B3 \n"
+            + "** Occupied seats are indicated with XX\n"
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_CANCEL_SUCCESS
+            + "1"
+            + NEW_LINE
+            + free
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void hold_confirm_availability_success() {
+    String input =
+        "SETUP 100 2 3 2\nMODE BUYER\nHOLD 100 61234567 A1,B2\nBOOK 100 91234567 B2\n"
+            + "CONFIRM 1 61234567\nAVAILABILITY 100\nCONFIRM 1 61234567\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_HOLD
+            + "1"
+            + BookingASystem.MSG_HOLD_EXPIRY
+            + "600"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.ERROR_MSG_INVALID_INPUT
+            + BookingASystem.ERROR_MSG_SEAT
+            + "B2"
+            + NEW_LINE
+            + PRINT_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + ">> -- Available Seats for Show Number 100:\n"
+            + "XX A2 A3 \n"
+            + "B1 XX B3 \n"
+            + "** Occupied seats are indicated with XX\n"
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.ERROR_MSG_INVALID_INPUT
+            + BookingASystem.ERROR_MSG_HOLD_NUMBER
+            + NEW_LINE
+            + PRINT_TEXT
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void book_by_count_availability_success() {
+    String input =
+        "SETUP 100 3 5 2\nMODE BUYER\nBOOK 100 61234567 A3\nBOOK 100 91234567 3\n"
+            + "BOOK 100 81234567 4\nBOOK 100 81234568 8\nAVAILABILITY 100\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "2"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "3"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.ERROR_MSG_INVALID_INPUT
+            + BookingASystem.ERROR_MSG_NOT_ENOUGH_SEATS
+            + NEW_LINE
+            + PRINT_TEXT
+            + ">> -- Available Seats for Show Number 100:\n"
+            + "A1 A2 XX A4 A5 \n"
+            + "B1 XX XX XX B5 \n"
+            + "XX XX XX XX C5 \n"
+            + "** Occupied seats are indicated with XX\n"
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void view_book_view_success() {
+    String input =
+        "SETUP 100 10 10 2\nVIEW 100\nMODE BUYER\nBOOK 100 61234567 D3,D4\nMODE ADMIN\nVIEW 100\n"
+            + "EXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+    Show show = new Show(100, 10, 10, 2);
+    String emptyView = show.toString();
+    show.addTicket(new Ticket(1, 61234567, 100, Arrays.asList("D3", "D4"), Instant.now()));
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + emptyView
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_ADMIN
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + show.toString()
+            + NEW_LINE
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void mytickets_lists_live_tickets_across_shows() {
+    String input =
+        "SETUP 100 3 5 60\nSETUP 200 3 5 60\nMODE BUYER\nBOOK 100 61234567 A1\n"
+            + "BOOK 200 61234567 B2,B3\nBOOK 200 91234567 C1\nCANCEL 1 61234567\n"
+            + "BOOK 100 61234567 A5\nMYTICKETS 61234567\nMYTICKETS 81234567\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertTrue(
+        outputStreamCaptor
+            .toString()
+            .endsWith(
+                ">> "
+                    + BookingASystem.MSG_MYTICKETS
+                    + "61234567: 2\n"
+                    + "    #2 for Show Number 200, seats=[B2, B3]\n"
+                    + "    #4 for Show Number 100, seats=[A5]\n"
+                    + ">> "
+                    + BookingASystem.MSG_MYTICKETS
+                    + "81234567: 0\n"
+                    + ">> "));
+  }
+
+  @Test
+  public void seatsleft_and_findshows_report_capacity() {
+    String input =
+        "SETUP 100 2 4 2\nSETUP 200 1 6 2\nMODE BUYER\nBOOK 100 61234567 A2,B3\n"
+            + "SEATSLEFT 100\nFINDSHOWS 3\nFINDSHOWS 7\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SEATSLEFT
+            + "100: 6"
+            + BookingASystem.MSG_SEATSLEFT_TOGETHER
+            + "2\n"
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_FINDSHOWS
+            + "3 seats left: 2, together in a row: 1\n"
+            + "    200: 6 left, 6 together\n"
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_FINDSHOWS
+            + "7 seats left: 0, together in a row: 0\n"
+            + USER_INPUT_SIGN_WAIT,
+        outputStreamCaptor.toString());
+  }
+
+  @Test
+  public void bookbatch_books_valid_entries_and_rejects_others() {
+    String input =
+        "SETUP 100 3 5 2\nMODE BUYER\nBOOK 100 61234567 A3\n"
+            + "BOOKBATCH 100 91234567 A1,A2 81234567 A2 61234567 B1 9123 B2 81234568 3 91234568 Z9"
+            + " 81234569 C1 abc C2 81234570 4x\nAVAILABILITY 100\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOKBATCH
+            + "3 of 9\n"
+            + "    91234567: #2\n"
+            + "    81234567: "
+            + BookingASystem.ERROR_MSG_SEAT
+            + "A2\n"
+            + "    61234567: "
+            + BookingASystem.ERROR_MSG_DUPLICATE_PHONE
+            + "\n"
+            + "    9123: "
+            + BookingASystem.ERROR_MSG_INVALID_PHONE_NUMBER
+            + "\n"
+            + "    81234568: #3\n"
+            + "    91234568: "
+            + BookingASystem.ERROR_MSG_SEAT
+            + "Z9\n"
+            + "    81234569: #4\n"
+            + "    abc: "
+            + BookingASystem.ERROR_MSG_INVALID_PHONE_NUMBER
+            + "\n"
+            + "    81234570: "
+            + BookingASystem.ERROR_MSG_INVALID_SEAT
+            + "\n"
+            + ">> -- Available Seats for Show Number 100:\n"
+            + "XX XX XX A4 A5 \n"
+            + "B1 XX XX XX B5 \n"
+            + "XX C2 C3 C4 C5 \n"
+            + "** Occupied seats are indicated with XX\n"
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void setup_book_availability_multi_letter_rows_success() {
+    String input =
+        "SETUP 100 28 3 2\nMODE BUYER\nBOOK 100 61234567 AB3,aa1,Z2\nAVAILABILITY 100\nEXIT\n";
+    InputStream in = new ByteArrayInputStream(input.getBytes());
+    System.setIn(in);
+
+    BookingASystem.main(new String[0]);
+
+    StringBuilder rows = new StringBuilder();
+    for (char row = 'A'; row < 'Z'; row++) {
+      rows.append(row).append("1 ").append(row).append("2 ").append(row).append("3 \n");
+    }
+    rows.append("Z1 XX Z3 \n").append("XX AA2 AA3 \n").append("AB1 AB2 XX \n");
+    Assert.assertEquals(
+        WELCOME_TEXT
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_SETUP
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_MODE_BUYER
+            + NEW_LINE
+            + USER_INPUT_SIGN_WAIT
+            + BookingASystem.MSG_BOOK
+            + "1"
+            + NEW_LINE
+            + ">> -- Available Seats for Show Number 100:\n"
+            + rows
+            + "** Occupied seats are indicated with XX\n"
+            + USER_INPUT_SIGN,
+        outputStreamCaptor.toString().trim());
+  }
+
+  @Test
+  public void batch_matches_console_output() throws Exception {
+    String commands =
+        "SETUP 100 10 10 2\nMODE BUYER\nBOOK 100 61234567 D3,D4,D5\nBOOK 100 61234567 A1\n"
+            + "CANCEL 1 61234567\r\nAVAILABILITY 100\nEXIT\nBOOK 100 91234567 A1\n";
+    Path commandFile = Files.createTempFile("commands", ".txt");
+    Path outputFile = Files.createTempFile("output", ".txt");
+    Files.write(commandFile, commands.getBytes(StandardCharsets.US_ASCII));
+    try {
+      BookingASystem.main(new String[] {commandFile.toString(), outputFile.toString()});
+
+      System.setIn(new ByteArrayInputStream(commands.replace("\r", "").getBytes()));
+      BookingASystem.main(new String[0]);
+      String console = outputStreamCaptor.toString();
+      String expected =
+          console
+              .substring(WELCOME_TEXT.length() + USER_INPUT_SIGN_WAIT.length())
+              .replace(USER_INPUT_SIGN_WAIT, "");
+      Assert.assertEquals(
+          expected, new String(Files.readAllBytes(outputFile), StandardCharsets.US_ASCII));
+    } finally {
+      Files.delete(commandFile);
+      Files.delete(outputFile);
+    }
+  }
+
+  private static String ticket(int ticketNum, int phoneNum, String seat) {
+    return new Ticket(ticketNum, phoneNum, 100, Arrays.asList(seat), Instant.now()).toString();
+  }
 }
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Bookings for one show submitted together, see BookingService.bookBatch. Every entry is a phone
+ * number with either seat codes or a number of seats to be picked, and ends up either booked with
+ * a ticket number or rejected with the message a BOOK of the entry on its own would have got.
+ */
+class BookingBatch {
+  private final int showNum;
+  private int size;
+  private int[] phoneNums = new int[16];
+  // the phone number as given, for an entry rejected before it could be parsed, otherwise null
+  private String[] phoneTokens = new String[16];
+  // null for an entry that gives a number of seats
+  private int[][] seats = new int[16][];
+  private int[] seatCounts = new int[16];
+  // 0 until the entry is booked
+  private int[] ticketNums = new int[16];
+  private String[] errors = new String[16];
+  private int bookedCount;
+
+  BookingBatch(int showNum) {
+    this.showNum = showNum;
+  }
+
+  public int getShowNum() {
+    return showNum;
+  }
+
+  /** Returns the number of entries */
+  public int size() {
+    return size;
+  }
+
+  public int getBookedCount() {
+    return bookedCount;
+  }
+
+  /** Adds an entry for the given seats */
+  public void add(int phoneNum, int[] seats) {
+    int i = grow();
+    phoneNums[i] = phoneNum;
+    this.seats[i] = seats;
+    seatCounts[i] = seats.length;
+  }
+
+  /** Adds an entry for the best block of seatCount free seats */
+  public void addBest(int phoneNum, int seatCount) {
+    int i = grow();
+    phoneNums[i] = phoneNum;
+    seatCounts[i] = seatCount;
+  }
+
+  /**
+   * Adds an entry that has already been rejected, e.g. because it could not be parsed, shown by
+   * its phone number as given
+   */
+  public void addRejected(String phoneToken, String error) {
+    int i = grow();
+    phoneTokens[i] = phoneToken;
+    errors[i] = error;
+  }
+
+  public int getPhoneNum(int entry) {
+    return phoneNums[entry];
+  }
+
+  /** Returns the seat codes of the entry, the seats picked for a booked entry given a count */
+  public int[] getSeats(int entry) {
+    return seats[entry];
+  }
+
+  public int getSeatCount(int entry) {
+    return seatCounts[entry];
+  }
+
+  /** Returns the ticket number of the entry, or 0 if it has not been booked */
+  public int getTicketNum(int entry) {
+    return ticketNums[entry];
+  }
+
+  /** Returns the reason the entry was rejected, or null */
+  public String getError(int entry) {
+    return errors[entry];
+  }
+
+  public boolean isRejected(int entry) {
+    return errors[entry] != null;
+  }
+
+  void reject(int entry, String error) {
+    errors[entry] = error;
+  }
+
+  /** Records the seats taken for an entry that is about to be booked */
+  void setSeats(int entry, int[] seats) {
+    this.seats[entry] = seats;
+  }
+
+  void setTicketNum(int entry, int ticketNum) {
+    ticketNums[entry] = ticketNum;
+    bookedCount++;
+  }
+
+  /**
+   * Appends the response to BOOKBATCH: a count of the entries booked, then a line per entry with
+   * its phone number and either its ticket number or the reason it was rejected
+   */
+  public TextBuffer appendTo(TextBuffer buffer) {
+    buffer.append(BookingASystem.MSG_BOOKBATCH).append(bookedCount).append(" of ").append(size);
+    buffer.newLine();
+    for (int i = 0; i < size; i++) {
+      buffer.append("    ");
+      if (phoneTokens[i] != null) {
+        buffer.append(phoneTokens[i]);
+      } else {
+        buffer.append(phoneNums[i]);
+      }
+      buffer.append(": ");
+      if (errors[i] != null) {
+        buffer.append(errors[i]);
+      } else {
+        buffer.append('#').append(ticketNums[i]);
+      }
+      buffer.newLine();
+    }
+    return buffer;
+  }
+
+  private int grow() {
+    if (size == phoneNums.length) {
+      int capacity = size * 2;
+      phoneNums = Arrays.copyOf(phoneNums, capacity);
+      phoneTokens = Arrays.copyOf(phoneTokens, capacity);
+      seats = Arrays.copyOf(seats, capacity);
+      seatCounts = Arrays.copyOf(seatCounts, capacity);
+      ticketNums = Arrays.copyOf(ticketNums, capacity);
+      errors = Arrays.copyOf(errors, capacity);
+    }
+    return size++;
+  }
+}
@@ -0,0 +1,888 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Booking engine holding all shows and tickets. It is safe to share between buyer threads: every
+ * show is guarded by its own monitor, so bookings for different shows never contend, and a
+ * multi-seat booking is validated and committed under that monitor as a single step.
+ *
+ * <p>With a journal, every change is appended to it while the show's monitor is held, so the
+ * records of a show are in the order they were applied, and the command only returns once its
+ * record is durable.
+ *
+ * <p>Holds reserve seats until they are confirmed or their TTL runs out. Expired holds are
+ * collected by a timing wheel that is advanced by the calls made to the service, so no thread is
+ * needed and releasing a hold costs the same however many holds are pending.
+ *
+ * <p>With a snapshot, shows that are not in memory yet are loaded from it the first time they or
+ * one of their tickets are looked up.
+ *
+ * <p>With shards, the shows are partitioned by show number across single-threaded event loops and
+ * every change to a show runs on the thread of its shard, so a show has one writer and only
+ * queries, which read the show under its monitor from the calling thread, contend with it. Each
+ * shard numbers its tickets from a block leased from the TicketAllocator, so shards do not share
+ * a counter or write to the same chunk of the ticket table.
+ *
+ * <p>Every change to a show's seats refiles it in a CapacityIndex under the same monitor, which
+ * answers how many shows have seats left, and which can seat a group together, without visiting
+ * each show.
+ */
+class BookingService {
+  public static final long DEFAULT_HOLD_TTL_MILLIS = 10 * 60 * 1000;
+  private static final long HOLD_TICK_MILLIS = 100;
+  private static final int SHARD_RING_CAPACITY = 1024;
+
+  private final ConcurrentMap<Integer, Show> showMap = new ConcurrentHashMap<>();
+  private final TicketTable ticketTable = new TicketTable();
+  private final TicketAllocator ticketAllocator = new TicketAllocator();
+  private final CapacityIndex capacityIndex = new CapacityIndex();
+  private final ConcurrentMap<Integer, Hold> holdMap = new ConcurrentHashMap<>();
+  private final AtomicInteger holdCount = new AtomicInteger(1);
+  private final CommandStats stats = new CommandStats();
+  private final Clock clock;
+  private final TimingWheel<Hold> holdWheel;
+  // time from which the wheel has holds to expire, read without the wheel's lock
+  private volatile long holdsDueAt;
+  private long holdTtlMillis = DEFAULT_HOLD_TTL_MILLIS;
+  private Journal journal;
+  // the highest journal sequence number a command run by runDeferringDurability depends on
+  private final ThreadLocal<long[]> deferredSeq = new ThreadLocal<>();
+  private Snapshot snapshot;
+  // set once every show of the snapshot is in the map, after which queries across shows skip it
+  private volatile boolean snapshotShowsLoaded;
+  private ShardExecutor shards;
+  private SeatRegion seatRegion;
+  // the block each shard issues ticket numbers from, only used by the shard's thread
+  private TicketAllocator.Block[] ticketBlocks;
+
+  /**
+   * The outcome of a change, the journal sequence number to wait for, 0 if none, and how to take
+   * the change back if the record never becomes durable, null if it needs no undoing
+   */
+  private static final class Change<T> {
+    private final T value;
+    private final long seq;
+    private final Runnable undo;
+
+    private Change(T value, long seq) {
+      this(value, seq, null);
+    }
+
+    private Change(T value, long seq, Runnable undo) {
+      this.value = value;
+      this.seq = seq;
+      this.undo = undo;
+    }
+  }
+
+  BookingService() {
+    this(Clock.systemUTC());
+  }
+
+  BookingService(Clock clock) {
+    this.clock = clock;
+    this.holdWheel = new TimingWheel<>(HOLD_TICK_MILLIS, clock.millis());
+    this.holdsDueAt = holdWheel.nextTickMillis();
+  }
+
+  /** Returns the statistics of the commands run against the service by any front end */
+  public CommandStats getStats() {
+    return stats;
+  }
+
+  public long getHoldTtl() {
+    return holdTtlMillis;
+  }
+
+  /** Sets how long new holds keep their seats, to be called before the service is shared */
+  public void setHoldTtl(long holdTtlMillis) {
+    this.holdTtlMillis = holdTtlMillis;
+  }
+
+  /** Starts journaling changes, to be called before the service is shared between threads */
+  public void setJournal(Journal journal) {
+    this.journal = journal;
+    ticketAllocator.setJournal(journal);
+  }
+
+  /**
+   * Runs the command on the calling thread without waiting for the journal records of its changes
+   * to become durable, for a front end that holds back the command's response instead until
+   * isDurable returns true for the returned sequence number
+   *
+   * @return the journal sequence number the command's changes depend on, 0 if none
+   */
+  public long runDeferringDurability(Runnable command) {
+    long[] seq = {0};
+    deferredSeq.set(seq);
+    try {
+      command.run();
+    } finally {
+      deferredSeq.remove();
+    }
+    return seq[0];
+  }
+
+  /**
+   * Returns true once the journal record with the given sequence number is durable, always for 0
+   *
+   * @exception UncheckedIOException if the journal failed before the record became durable
+   */
+  public boolean isDurable(long seq) {
+    return seq == 0 || journal.isDurable(seq);
+  }
+
+  /**
+   * Sets the listener run after every batch of journal records is made durable, to be called
+   * after setJournal; without a journal there is nothing to wait for
+   */
+  public void setDurableListener(Runnable listener) {
+    if (journal != null) {
+      journal.setDurableListener(listener);
+    }
+  }
+
+  /**
+   * Serves the shows and tickets of the snapshot, to be called on an empty service before its
+   * journal is opened
+   */
+  public void setSnapshot(Snapshot snapshot) {
+    this.snapshot = snapshot;
+    ticketAllocator.advanceTo(snapshot.getNextTicket());
+  }
+
+  /**
+   * Runs the changes to every show on the shard that owns it, one of count single-threaded event
+   * loops, to be called before the service is shared between threads. The threads are daemons.
+   */
+  public void setShards(int count) {
+    shards = new ShardExecutor(count, SHARD_RING_CAPACITY);
+    ticketBlocks = new TicketAllocator.Block[count];
+    for (int i = 0; i < count; i++) {
+      ticketBlocks[i] = new TicketAllocator.Block();
+    }
+  }
+
+  /**
+   * Keeps the seats of the shows set up from now on in the off-heap region, to be called before
+   * the journal is opened
+   */
+  public void setSeatRegion(SeatRegion seatRegion) {
+    this.seatRegion = seatRegion;
+  }
+
+  /** Returns the journal position that replay starts from */
+  public long getJournalStart() {
+    return snapshot != null ? snapshot.getJournalStart() : 0;
+  }
+
+  public Show getShow(int showNum) {
+    expireHolds();
+    Show show = showMap.get(showNum);
+    if (show == null && snapshot != null) {
+      show = showMap.computeIfAbsent(showNum, this::loadShow);
+    }
+    return show;
+  }
+
+  public Ticket getTicket(int ticketNum) {
+    Ticket ticket = ticketTable.get(ticketNum);
+    if (ticket == null && snapshot != null) {
+      int showNum = snapshot.getShowOfTicket(ticketNum);
+      if (showNum != 0 && getShow(showNum) != null) {
+        ticket = ticketTable.get(ticketNum);
+      }
+    }
+    return ticket;
+  }
+
+  public Hold getHold(int holdNum) {
+    return holdMap.get(holdNum);
+  }
+
+  /**
+   * Adds a new show
+   *
+   * @exception IllegalArgumentException if the show number is already taken
+   */
+  public Show setup(int showNum, int totalRows, int totalSeats, int cancellationWindow) {
+    if (snapshot != null && getShow(showNum) != null) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_DUPLICATE_SHOW);
+    }
+    Change<Show> change =
+        onShard(
+            showNum,
+            () -> {
+              long[] seq = {0};
+              Show[] created = {null};
+              // only the setup that claims the number takes seat region space, which is never
+              // given back; journaled before the show is published, so before any of its bookings
+              Show show =
+                  showMap.computeIfAbsent(
+                      showNum,
+                      key -> {
+                        created[0] = newShow(showNum, totalRows, totalSeats, cancellationWindow);
+                        seq[0] =
+                            journal != null
+                                ? journal.appendSetup(
+                                    showNum, totalRows, totalSeats, cancellationWindow)
+                                : 0;
+                        return created[0];
+                      });
+              if (show != created[0]) {
+                throw new IllegalArgumentException(BookingASystem.ERROR_MSG_DUPLICATE_SHOW);
+              }
+              return new Change<>(show, seq[0]);
+            });
+    awaitDurable(change.seq);
+    return change.value;
+  }
+
+  /**
+   * Books all the given seats for the phone number, or none of them if any seat is invalid or
+   * already taken
+   *
+   * @return the booked ticket
+   * @exception IllegalArgumentException if the show does not exist, the phone number already has a
+   *     booking for the show or one of the seats cannot be booked
+   */
+  public Ticket book(int showNum, int phoneNum, int[] seats) {
+    return book(showNum, phoneNum, seats, seats.length);
+  }
+
+  /**
+   * Books the best free seats for a group of the given size, see SeatMap.findBlock
+   *
+   * @return the booked ticket
+   * @exception IllegalArgumentException if the show does not exist, the phone number already has a
+   *     booking for the show or no block of free seats fits the group
+   */
+  public Ticket bookBest(int showNum, int phoneNum, int seatCount) {
+    return book(showNum, phoneNum, null, seatCount);
+  }
+
+  private Ticket book(int showNum, int phoneNum, int[] seats, int seatCount) {
+    Show show = getShow(showNum);
+    if (show == null) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_SHOW_NUMBER);
+    }
+    Change<Ticket> change =
+        onShard(
+            showNum,
+            () -> {
+              synchronized (show) {
+                int[] occupied = occupySeats(show, phoneNum, seats, seatCount);
+                Ticket ticket = null;
+                try {
+                  ticket = addTicket(show, phoneNum, occupied);
+                  long seq = journal != null ? journal.appendBook(ticket) : 0;
+                  capacityIndex.update(show);
+                  int ticketNum = ticket.getTicketNum();
+                  return new Change<>(ticket, seq, () -> undoBook(show, ticketNum, occupied));
+                } catch (RuntimeException e) {
+                  // the journal is closed or has failed, so the booking cannot be made durable
+                  undoBook(show, ticket != null ? ticket.getTicketNum() : 0, occupied);
+                  throw e;
+                }
+              }
+            });
+    return awaitDurable(show, change);
+  }
+
+  /**
+   * Books the entries of the batch that can be booked, in order, and rejects the others with the
+   * reason a BOOK of the entry would have been rejected. The show is looked up and locked once
+   * for the whole batch, every entry is checked against the seat map and the phone numbers of the
+   * show and of the entries before it in a single sweep, and the booked entries get one
+   * contiguous range of ticket numbers.
+   *
+   * @return the batch, with the ticket number or error of every entry
+   * @exception IllegalArgumentException if the show does not exist
+   */
+  public BookingBatch bookBatch(BookingBatch batch) {
+    int showNum = batch.getShowNum();
+    Show show = getShow(showNum);
+    if (show == null) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_SHOW_NUMBER);
+    }
+    Change<BookingBatch> change =
+        onShard(
+            showNum,
+            () -> {
+              synchronized (show) {
+                long seq = bookEntries(show, batch);
+                capacityIndex.update(show);
+                return new Change<>(batch, seq, () -> undoBatch(show, batch));
+              }
+            });
+    return awaitDurable(show, change);
+  }
+
+  /**
+   * Occupies the seats of every entry of the batch that is not rejected, then issues their
+   * tickets, the caller must hold the show's monitor
+   *
+   * @return the journal sequence number of the last ticket, 0 if none
+   */
+  private long bookEntries(Show show, BookingBatch batch) {
+    IntIntHashMap batchPhones = new IntIntHashMap();
+    int accepted = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.isRejected(i)) {
+        continue;
+      }
+      int phoneNum = batch.getPhoneNum(i);
+      try {
+        if (batchPhones.containsKey(phoneNum)) {
+          throw new IllegalArgumentException(BookingASystem.ERROR_MSG_DUPLICATE_PHONE);
+        }
+        batch.setSeats(
+            i, occupySeats(show, phoneNum, batch.getSeats(i), batch.getSeatCount(i)));
+        batchPhones.put(phoneNum, 1);
+        accepted++;
+      } catch (IllegalArgumentException e) {
+        batch.reject(i, e.getMessage());
+      }
+    }
+    if (accepted == 0) {
+      return 0;
+    }
+    long seq = 0;
+    try {
+      int ticketNum = nextTicketNums(show.getShowNum(), accepted);
+      Instant timestamp = clock.instant();
+      for (int i = 0; i < batch.size(); i++) {
+        if (batch.isRejected(i)) {
+          continue;
+        }
+        int phoneNum = batch.getPhoneNum(i);
+        int[] seats = batch.getSeats(i);
+        show.addTicket(ticketNum, phoneNum, seats, timestamp.toEpochMilli());
+        batch.setTicketNum(i, ticketNum++);
+        if (journal != null) {
+          seq =
+              journal.appendBook(
+                  new Ticket(batch.getTicketNum(i), phoneNum, show.getShowNum(), seats, timestamp));
+        }
+      }
+    } catch (RuntimeException e) {
+      // the journal is closed or has failed, so none of the batch can be made durable
+      undoBatch(show, batch);
+      throw e;
+    }
+    return seq;
+  }
+
+  /**
+   * Takes back every booked entry of the batch, and frees the seats of the entries occupied but
+   * not ticketed yet, the caller must hold the show's monitor
+   */
+  private void undoBatch(Show show, BookingBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      if (!batch.isRejected(i)) {
+        undoBook(show, batch.getTicketNum(i), batch.getSeats(i));
+      }
+    }
+  }
+
+  /**
+   * Reserves all the given seats for the phone number until the hold TTL runs out, or none of them
+   * if any seat is invalid or already taken
+   *
+   * @return the hold
+   * @exception IllegalArgumentException if the show does not exist, the phone number already has a
+   *     booking or hold for the show or one of the seats cannot be held
+   */
+  public Hold hold(int showNum, int phoneNum, int[] seats) {
+    return hold(showNum, phoneNum, seats, seats.length);
+  }
+
+  /**
+   * Holds the best free seats for a group of the given size, see SeatMap.findBlock
+   *
+   * @return the hold
+   * @exception IllegalArgumentException if the show does not exist, the phone number already has a
+   *     booking or hold for the show or no block of free seats fits the group
+   */
+  public Hold holdBest(int showNum, int phoneNum, int seatCount) {
+    return hold(showNum, phoneNum, null, seatCount);
+  }
+
+  private Hold hold(int showNum, int phoneNum, int[] seats, int seatCount) {
+    Show show = getShow(showNum);
+    if (show == null) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_SHOW_NUMBER);
+    }
+    return onShard(
+        showNum,
+        () -> {
+          synchronized (show) {
+            int[] held = occupySeats(show, phoneNum, seats, seatCount);
+            capacityIndex.update(show);
+            long expiresAt = clock.millis() + holdTtlMillis;
+            Hold hold = new Hold(holdCount.getAndIncrement(), phoneNum, showNum, held, expiresAt);
+            show.addHold(hold);
+            holdMap.put(hold.getHoldNum(), hold);
+            synchronized (holdWheel) {
+              hold.setTimer(holdWheel.schedule(expiresAt, hold));
+            }
+            return hold;
+          }
+        });
+  }
+
+  /**
+   * Turns a hold that has not expired into a ticket for its seats
+   *
+   * @return the booked ticket
+   * @exception IllegalArgumentException if the hold does not exist or has expired, or belongs to
+   *     another phone number
+   */
+  public Ticket confirm(int holdNum, int phoneNum) {
+    expireHolds();
+    Hold hold = holdMap.get(holdNum);
+    if (hold == null) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_HOLD_NUMBER);
+    }
+    if (hold.getPhoneNum() != phoneNum) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_MISMATCH_HOLD_PHONE);
+    }
+    Show show = showMap.get(hold.getShowNum());
+    Change<Ticket> change =
+        onShard(
+            show.getShowNum(),
+            () -> {
+              synchronized (show) {
+                if (holdMap.get(holdNum) != hold) {
+                  throw new IllegalArgumentException(BookingASystem.ERROR_MSG_HOLD_NUMBER);
+                }
+                removeHold(show, hold);
+                if (clock.millis() >= hold.getExpiresAt()) {
+                  // expired within the current tick of the wheel
+                  releaseSeats(show, hold.getSeats(), hold.getSeats().length);
+                  capacityIndex.update(show);
+                  throw new IllegalArgumentException(BookingASystem.ERROR_MSG_HOLD_NUMBER);
+                }
+                Ticket ticket = null;
+                try {
+                  ticket = addTicket(show, phoneNum, hold.getSeats());
+                  long seq = journal != null ? journal.appendBook(ticket) : 0;
+                  int ticketNum = ticket.getTicketNum();
+                  return new Change<>(
+                      ticket, seq, () -> undoBook(show, ticketNum, hold.getSeats()));
+                } catch (RuntimeException e) {
+                  // the hold is gone either way, its seats go back to the show
+                  undoBook(show, ticket != null ? ticket.getTicketNum() : 0, hold.getSeats());
+                  throw e;
+                }
+              }
+            });
+    return awaitDurable(show, change);
+  }
+
+  /**
+   * Cancels the ticket if it is still within the show's cancellation window
+   *
+   * @return 0 if the ticket is cancelled, otherwise the number of minutes by which the
+   *     cancellation window has been exceeded
+   * @exception IllegalArgumentException if the ticket does not exist or belongs to another phone
+   *     number
+   */
+  public long cancel(int ticketNum, int phoneNum) {
+    Ticket ticket = getTicket(ticketNum);
+    if (ticket == null) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_TICKET_NUMBER);
+    }
+    if (ticket.getPhoneNum() != phoneNum) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_MISMATCH_TICKET_PHONE);
+    }
+    // waits for the show if its tickets are still being loaded from the snapshot
+    Show show = getShow(ticket.getShowNum());
+    Change<Long> change =
+        onShard(
+            show.getShowNum(),
+            () -> {
+              synchronized (show) {
+                // ticket numbers are never reused, so the ticket is unchanged unless it is gone
+                if (ticketTable.getShowNum(ticketNum) != show.getShowNum()) {
+                  throw new IllegalArgumentException(BookingASystem.ERROR_MSG_TICKET_NUMBER);
+                }
+                long durationInMins =
+                    Duration.between(ticket.getTimestamp(), clock.instant()).toMinutes();
+                if (durationInMins > show.getCancellationWindow()) {
+                  return new Change<>(durationInMins - show.getCancellationWindow(), 0L);
+                }
+                releaseSeats(show, ticket.getSeats(), ticket.getSeats().length);
+                show.removeTicket(ticketNum);
+                capacityIndex.update(show);
+                try {
+                  long seq =
+                      journal != null ? journal.appendCancel(ticketNum, show.getShowNum()) : 0;
+                  return new Change<>(0L, seq, () -> undoCancel(show, ticket));
+                } catch (RuntimeException e) {
+                  // the journal is closed or has failed, so the cancellation cannot be made durable
+                  undoCancel(show, ticket);
+                  throw e;
+                }
+              }
+            });
+    return awaitDurable(show, change);
+  }
+
+  /**
+   * Returns the live tickets of the phone number across all shows in ticket number order, looked
+   * up by the phone index rather than by visiting the shows. With a snapshot, the first query
+   * across shows loads the snapshot's shows, so that their tickets are in the index.
+   */
+  public List<Ticket> getTicketsOfPhone(int phoneNum) {
+    loadSnapshotShows();
+    List<Ticket> tickets = new ArrayList<>();
+    for (int ticketNum : ticketTable.getTicketNums(phoneNum)) {
+      Ticket ticket = ticketTable.get(ticketNum);
+      // null if cancelled since the lookup
+      if (ticket != null) {
+        tickets.add(ticket);
+      }
+    }
+    return tickets;
+  }
+
+  /**
+   * Returns the number of shows with at least the given number of free seats, counted by the
+   * capacity index. With a snapshot, the first query across shows loads the snapshot's shows into
+   * the index and later ones go straight to it.
+   */
+  public int countShowsWithFreeSeats(int seatCount) {
+    expireHolds();
+    loadSnapshotShows();
+    return capacityIndex.countWithFreeSeats(seatCount);
+  }
+
+  /** Returns the number of shows that can seat a group of the given size in one row */
+  public int countShowsWithFreeRun(int seatCount) {
+    expireHolds();
+    loadSnapshotShows();
+    return capacityIndex.countWithFreeRun(seatCount);
+  }
+
+  /**
+   * Returns up to limit shows that can seat a group of the given size in one row, those with the
+   * most seats together first
+   */
+  public List<Show> findShowsWithFreeRun(int seatCount, int limit) {
+    expireHolds();
+    loadSnapshotShows();
+    List<Show> shows = new ArrayList<>();
+    for (int showNum : capacityIndex.findWithFreeRun(seatCount, limit)) {
+      shows.add(showMap.get(showNum));
+    }
+    return shows;
+  }
+
+  /**
+   * Writes every show and live ticket to a snapshot file, replacing the file once the snapshot is
+   * complete. Each show is captured under its monitor, so bookings for other shows carry on while
+   * the snapshot is written. Shows still in an earlier snapshot are loaded first.
+   */
+  public void checkpoint(Path path) throws IOException {
+    loadSnapshotShows();
+    // every record before this position belongs to a show that is already in the map
+    long journalStart = journalPosition();
+    try (Snapshot.Writer writer = new Snapshot.Writer(path)) {
+      for (Show show : showMap.values()) {
+        synchronized (show) {
+          writer.addShow(show, journalPosition());
+        }
+      }
+      writer.finish(ticketAllocator.getNext(), journalStart);
+    }
+  }
+
+  /**
+   * Re-adds a show read back from the journal at the given position, without validation, unless
+   * the snapshot already contains it
+   */
+  void restoreShow(
+      long position, int showNum, int totalRows, int totalSeats, int cancellationWindow) {
+    if (isInSnapshot(showNum, position)) {
+      return;
+    }
+    showMap.put(showNum, newShow(showNum, totalRows, totalSeats, cancellationWindow));
+  }
+
+  /** Creates a show filed in the capacity index, with its seats in the region if there is one */
+  private Show newShow(int showNum, int totalRows, int totalSeats, int cancellationWindow) {
+    Show show =
+        new Show(showNum, totalRows, totalSeats, cancellationWindow, ticketTable, seatRegion);
+    synchronized (show) {
+      capacityIndex.update(show);
+    }
+    return show;
+  }
+
+  /**
+   * Re-adds a ticket read back from the journal, without validation, and moves the ticket counter
+   * past its number so that numbers are never handed out twice
+   */
+  void restoreTicket(
+      long position, int ticketNum, int phoneNum, int showNum, int[] seats, long epochMillis) {
+    if (isInSnapshot(showNum, position)) {
+      return;
+    }
+    Show show = getShow(showNum);
+    if (show == null) {
+      throw new IllegalStateException("Ticket " + ticketNum + " is for unknown show " + showNum);
+    }
+    synchronized (show) {
+      for (int seat : seats) {
+        show.setOccupiedSeats(Seats.row(seat), Seats.col(seat), true);
+      }
+      show.addTicket(ticketNum, phoneNum, seats, epochMillis);
+      capacityIndex.update(show);
+    }
+    ticketAllocator.advanceTo(ticketNum + 1);
+  }
+
+  /** Moves the ticket counter past a high-water mark read back from the journal */
+  void restoreLease(int end) {
+    ticketAllocator.restoreHighWaterMark(end);
+  }
+
+  /** Removes a ticket whose cancellation was read back from the journal */
+  void restoreCancel(long position, int ticketNum, int showNum) {
+    if (isInSnapshot(showNum, position)) {
+      return;
+    }
+    Ticket ticket = getTicket(ticketNum);
+    if (ticket == null) {
+      return;
+    }
+    Show show = showMap.get(ticket.getShowNum());
+    synchronized (show) {
+      releaseSeats(show, ticket.getSeats(), ticket.getSeats().length);
+      show.removeTicket(ticketNum);
+      capacityIndex.update(show);
+    }
+  }
+
+  /**
+   * Releases the seats of the holds whose TTL has run out, advancing the timing wheel at most once
+   * per tick
+   */
+  private void expireHolds() {
+    long now = clock.millis();
+    if (now < holdsDueAt) {
+      return;
+    }
+    List<Hold> expired = new ArrayList<>();
+    synchronized (holdWheel) {
+      holdWheel.advance(now, expired::add);
+      holdsDueAt = holdWheel.nextTickMillis();
+    }
+    // released outside the wheel's lock, which is taken while holding show monitors
+    for (Hold hold : expired) {
+      Show show = showMap.get(hold.getShowNum());
+      Runnable release =
+          () -> {
+            synchronized (show) {
+              if (holdMap.remove(hold.getHoldNum(), hold)) {
+                show.removeHold(hold);
+                releaseSeats(show, hold.getSeats(), hold.getSeats().length);
+                capacityIndex.update(show);
+              }
+            }
+          };
+      if (shards != null) {
+        // queued ahead of any command the caller goes on to submit for the show
+        shards.execute(shards.shardOf(show.getShowNum()), release);
+      } else {
+        release.run();
+      }
+    }
+  }
+
+  /** Runs a change to the show on its shard, or on the calling thread without shards */
+  private <T> T onShard(int showNum, Supplier<T> change) {
+    return shards != null ? shards.call(shards.shardOf(showNum), change) : change.get();
+  }
+
+  /**
+   * Returns the first of count consecutive ticket numbers, with shards it must be called on the
+   * shard of the show
+   */
+  private int nextTicketNums(int showNum, int count) {
+    if (shards == null) {
+      return ticketAllocator.nextTicketNums(count);
+    }
+    return ticketAllocator.nextTicketNums(ticketBlocks[shards.shardOf(showNum)], count);
+  }
+
+  /**
+   * Marks all the seats as occupied for the phone number, or none of them if the phone number
+   * already has a booking or hold for the show or any seat is invalid or already taken. Without
+   * seats, the best block of seatCount free seats is picked. The caller must hold the show's
+   * monitor.
+   *
+   * @return the occupied seats
+   */
+  private static int[] occupySeats(Show show, int phoneNum, int[] seats, int seatCount) {
+    if (show.hasPhoneNum(phoneNum)) {
+      throw new IllegalArgumentException(BookingASystem.ERROR_MSG_DUPLICATE_PHONE);
+    }
+    if (seats == null) {
+      seats = show.findBestSeats(seatCount);
+      if (seats == null) {
+        throw new IllegalArgumentException(BookingASystem.ERROR_MSG_NOT_ENOUGH_SEATS);
+      }
+    }
+    for (int i = 0; i < seats.length; i++) {
+      int row = Seats.row(seats[i]);
+      int col = Seats.col(seats[i]);
+      if (seats[i] < 0 || !show.isValidSeat(row, col) || show.getOccupiedSeats(row, col)) {
+        releaseSeats(show, seats, i);
+        throw new IllegalArgumentException(BookingASystem.ERROR_MSG_SEAT + Seats.label(seats[i]));
+      }
+      show.setOccupiedSeats(row, col, true);
+    }
+    return seats;
+  }
+
+  /** Issues a ticket for seats already occupied, the caller must hold the show's monitor */
+  private Ticket addTicket(Show show, int phoneNum, int[] seats) {
+    int uniqueTicket = nextTicketNums(show.getShowNum(), 1);
+    Instant timestamp = clock.instant();
+    show.addTicket(uniqueTicket, phoneNum, seats, timestamp.toEpochMilli());
+    return new Ticket(uniqueTicket, phoneNum, show.getShowNum(), seats, timestamp);
+  }
+
+  /** Drops a hold without freeing its seats, the caller must hold the show's monitor */
+  private void removeHold(Show show, Hold hold) {
+    holdMap.remove(hold.getHoldNum());
+    show.removeHold(hold);
+    synchronized (holdWheel) {
+      holdWheel.cancel(hold.getTimer());
+    }
+  }
+
+  private Show loadShow(int showNum) {
+    try {
+      Show show = snapshot.loadShow(showNum, ticketTable, seatRegion);
+      if (show != null) {
+        synchronized (show) {
+          capacityIndex.update(show);
+        }
+      }
+      return show;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Loads the shows of the snapshot that are not in memory yet, only visiting them once */
+  private void loadSnapshotShows() {
+    if (snapshot != null && !snapshotShowsLoaded) {
+      for (int i = 0; i < snapshot.getShowCount(); i++) {
+        getShow(snapshot.getShowNum(i));
+      }
+      snapshotShowsLoaded = true;
+    }
+  }
+
+  /** Returns true if the journal record of the show at the given position is in the snapshot */
+  private boolean isInSnapshot(int showNum, long position) {
+    return snapshot != null && position < snapshot.getJournalOffset(showNum);
+  }
+
+  private long journalPosition() {
+    return journal != null ? journal.position() : 0;
+  }
+
+  /**
+   * Waits for the journal record of the change and returns its outcome, taking the change back
+   * on the show's shard if the journal fails before the record is durable
+   */
+  private <T> T awaitDurable(Show show, Change<T> change) {
+    try {
+      awaitDurable(change.seq);
+    } catch (UncheckedIOException e) {
+      if (change.undo == null) {
+        throw e;
+      }
+      onShard(
+          show.getShowNum(),
+          () -> {
+            synchronized (show) {
+              change.undo.run();
+            }
+            return null;
+          });
+      throw e;
+    }
+    return change.value;
+  }
+
+  /**
+   * Takes back a booking whose journal record cannot be made durable, freeing its seats and
+   * dropping its ticket, 0 if none was issued yet. Nothing is done if the ticket has been
+   * cancelled since. The caller must hold the show's monitor.
+   */
+  private void undoBook(Show show, int ticketNum, int[] seats) {
+    if (ticketNum != 0) {
+      if (ticketTable.getShowNum(ticketNum) != show.getShowNum()) {
+        return;
+      }
+      show.removeTicket(ticketNum);
+    }
+    releaseSeats(show, seats, seats.length);
+    capacityIndex.update(show);
+  }
+
+  /**
+   * Puts back a ticket whose cancellation cannot be made durable, unless one of its seats has been
+   * taken since. The caller must hold the show's monitor.
+   */
+  private void undoCancel(Show show, Ticket ticket) {
+    for (int seat : ticket.getSeats()) {
+      if (show.getOccupiedSeats(Seats.row(seat), Seats.col(seat))) {
+        return;
+      }
+    }
+    for (int seat : ticket.getSeats()) {
+      show.setOccupiedSeats(Seats.row(seat), Seats.col(seat), true);
+    }
+    show.addTicket(
+        ticket.getTicketNum(),
+        ticket.getPhoneNum(),
+        ticket.getSeats(),
+        ticket.getTimestamp().toEpochMilli());
+    capacityIndex.update(show);
+  }
+
+  private void awaitDurable(long seq) {
+    if (seq != 0) {
+      long[] deferred = deferredSeq.get();
+      if (deferred != null) {
+        deferred[0] = Math.max(deferred[0], seq);
+      } else {
+        journal.awaitDurable(seq);
+      }
+    }
+  }
+
+  /** Frees the first count seats of the array, the caller must hold the show's monitor */
+  private static void releaseSeats(Show show, int[] seats, int count) {
+    for (int i = 0; i < count; i++) {
+      show.setOccupiedSeats(Seats.row(seats[i]), Seats.col(seats[i]), false);
+    }
+  }
+}
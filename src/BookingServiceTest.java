@@ -0,0 +1,357 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BookingServiceTest {
+  @Test
+  public void book_failure_rolls_back_all_seats() {
+    BookingService service = new BookingService();
+    service.setup(100, 10, 10, 2);
+    service.book(100, 61234567, seats("D4"));
+
+    try {
+      service.book(100, 91234567, seats("D3", "D5", "D4"));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(BookingASystem.ERROR_MSG_SEAT + "D4", e.getMessage());
+    }
+
+    Show show = service.getShow(100);
+    Assert.assertFalse(show.getOccupiedSeats(3, 2));
+    Assert.assertFalse(show.getOccupiedSeats(3, 4));
+    Assert.assertEquals(99, show.getFreeSeats());
+  }
+
+  @Test
+  public void book_failure_duplicate_seat_in_request() {
+    BookingService service = new BookingService();
+    service.setup(100, 10, 10, 2);
+
+    try {
+      service.book(100, 61234567, seats("D3", "D3"));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(BookingASystem.ERROR_MSG_SEAT + "D3", e.getMessage());
+    }
+    Assert.assertEquals(100, service.getShow(100).getFreeSeats());
+  }
+
+  @Test
+  public void concurrent_book_never_double_books() throws Exception {
+    BookingService service = new BookingService();
+    service.setup(100, 10, 10, 2);
+    int buyers = 64;
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger bookedSeats = new AtomicInteger();
+    for (int i = 0; i < buyers; i++) {
+      final int phoneNum = 80000000 + i;
+      // every buyer wants three seats overlapping with the buyers next to them
+      final int[] seats = new int[3];
+      for (int j = 0; j < 3; j++) {
+        int seat = (i + j) % 100;
+        seats[j] = Seats.code(seat / 10, seat % 10);
+      }
+      executor.execute(
+          () -> {
+            try {
+              start.await();
+              bookedSeats.addAndGet(service.book(100, phoneNum, seats).getSeats().length);
+            } catch (IllegalArgumentException | InterruptedException e) {
+              // lost the race for one of the seats
+            }
+          });
+    }
+    start.countDown();
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    Show show = service.getShow(100);
+    Assert.assertEquals(100 - bookedSeats.get(), show.getFreeSeats());
+    int ticketSeats = 0;
+    for (Ticket ticket : show.getTickets()) {
+      ticketSeats += ticket.getSeats().length;
+    }
+    Assert.assertEquals(bookedSeats.get(), ticketSeats);
+  }
+
+  @Test
+  public void hold_expires_and_frees_seats() {
+    TestClock clock = new TestClock();
+    BookingService service = new BookingService(clock);
+    service.setHoldTtl(60_000);
+    service.setup(100, 10, 10, 2);
+    Hold hold = service.hold(100, 61234567, seats("D3", "D4"));
+    Assert.assertEquals(98, service.getShow(100).getFreeSeats());
+
+    try {
+      service.book(100, 61234567, seats("A1"));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(BookingASystem.ERROR_MSG_DUPLICATE_PHONE, e.getMessage());
+    }
+
+    clock.millis += 59_999;
+    Assert.assertEquals(98, service.getShow(100).getFreeSeats());
+    clock.millis += 1;
+    Assert.assertEquals(100, service.getShow(100).getFreeSeats());
+    Assert.assertNull(service.getHold(hold.getHoldNum()));
+
+    try {
+      service.confirm(hold.getHoldNum(), 61234567);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(BookingASystem.ERROR_MSG_HOLD_NUMBER, e.getMessage());
+    }
+    Assert.assertEquals(1, service.book(100, 91234567, seats("D3")).getTicketNum());
+  }
+
+  @Test
+  public void confirm_turns_hold_into_ticket() {
+    TestClock clock = new TestClock();
+    BookingService service = new BookingService(clock);
+    service.setup(100, 10, 10, 2);
+    Hold hold = service.hold(100, 61234567, seats("D3", "D4"));
+
+    try {
+      service.confirm(hold.getHoldNum(), 91234567);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(BookingASystem.ERROR_MSG_MISMATCH_HOLD_PHONE, e.getMessage());
+    }
+
+    Ticket ticket = service.confirm(hold.getHoldNum(), 61234567);
+    Assert.assertArrayEquals(seats("D3", "D4"), ticket.getSeats());
+    Assert.assertNull(service.getHold(hold.getHoldNum()));
+    clock.millis += BookingService.DEFAULT_HOLD_TTL_MILLIS;
+    Assert.assertEquals(98, service.getShow(100).getFreeSeats());
+    Ticket stored = service.getTicket(ticket.getTicketNum());
+    Assert.assertEquals(ticket, stored);
+    Assert.assertArrayEquals(ticket.getSeats(), stored.getSeats());
+  }
+
+  @Test
+  public void capacity_queries_release_expired_holds() {
+    TestClock clock = new TestClock();
+    BookingService service = new BookingService(clock);
+    service.setup(100, 1, 10, 2);
+    service.setup(200, 1, 8, 2);
+    service.hold(100, 61234567, seats("A5"));
+    Assert.assertEquals(200, service.findShowsWithFreeRun(8, 10).get(0).getShowNum());
+    Assert.assertEquals(0, service.countShowsWithFreeSeats(10));
+
+    clock.millis += BookingService.DEFAULT_HOLD_TTL_MILLIS + 1000;
+    Assert.assertEquals(100, service.findShowsWithFreeRun(8, 10).get(0).getShowNum());
+    Assert.assertEquals(2, service.findShowsWithFreeRun(8, 10).size());
+    Assert.assertEquals(1, service.countShowsWithFreeSeats(10));
+    Assert.assertEquals(1, service.countShowsWithFreeRun(10));
+  }
+
+  @Test
+  public void book_batch_takes_contiguous_ticket_numbers() {
+    BookingService service = new BookingService();
+    service.setup(100, 10, 10, 2);
+    service.book(100, 61234567, seats("A1"));
+    BookingBatch batch = new BookingBatch(100);
+    batch.add(91234567, seats("A2", "A3"));
+    batch.add(81234567, seats("A3"));
+    batch.addBest(81234568, 4);
+    batch.add(91234567, seats("J10"));
+    service.bookBatch(batch);
+    service.book(100, 61234568, seats("J9"));
+
+    Assert.assertEquals(2, batch.getBookedCount());
+    Assert.assertEquals(2, batch.getTicketNum(0));
+    Assert.assertEquals(BookingASystem.ERROR_MSG_SEAT + "A3", batch.getError(1));
+    Assert.assertEquals(3, batch.getTicketNum(2));
+    Assert.assertEquals(4, batch.getSeats(2).length);
+    Assert.assertEquals(BookingASystem.ERROR_MSG_DUPLICATE_PHONE, batch.getError(3));
+    Assert.assertEquals(4, service.getTicket(4).getTicketNum());
+    Assert.assertEquals(100 - 8, service.getShow(100).getFreeSeats());
+    Assert.assertArrayEquals(batch.getSeats(2), service.getTicket(3).getSeats());
+  }
+
+  @Test
+  public void sharded_service_books_every_show_on_its_shard() throws Exception {
+    TestClock clock = new TestClock();
+    BookingService service = new BookingService(clock);
+    service.setShards(4);
+    for (int show = 1; show <= 8; show++) {
+      service.setup(show, 10, 10, 2);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    Set<Integer> ticketNums = ConcurrentHashMap.newKeySet();
+    for (int i = 0; i < 8 * 100; i++) {
+      final int showNum = 1 + i % 8;
+      final int phoneNum = 80000000 + i;
+      final int[] seat = {Seats.code(i / 8 / 10, i / 8 % 10)};
+      executor.execute(
+          () -> ticketNums.add(service.book(showNum, phoneNum, seat).getTicketNum()));
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    Assert.assertEquals(800, ticketNums.size());
+    for (int show = 1; show <= 8; show++) {
+      Assert.assertEquals(0, service.getShow(show).getFreeSeats());
+      for (Ticket ticket : service.getShow(show).getTickets()) {
+        Assert.assertEquals(show, service.getTicket(ticket.getTicketNum()).getShowNum());
+      }
+    }
+    // every shard numbers the tickets of its two shows from a block of its own
+    Set<Integer> blocks = new HashSet<>();
+    for (int show = 1; show <= 4; show++) {
+      int block = service.getShow(show).getTickets().get(0).getTicketNum() / 4096;
+      for (int sameShard : new int[] {show, show + 4}) {
+        for (Ticket ticket : service.getShow(sameShard).getTickets()) {
+          Assert.assertEquals(block, ticket.getTicketNum() / 4096);
+        }
+      }
+      blocks.add(block);
+    }
+    Assert.assertEquals(4, blocks.size());
+    Ticket ticket = service.getShow(1).getTickets().get(0);
+    Assert.assertEquals(0, service.cancel(ticket.getTicketNum(), ticket.getPhoneNum()));
+    Assert.assertEquals(1, service.getShow(1).getFreeSeats());
+
+    try {
+      service.book(1, ticket.getPhoneNum() + 1, ticket.getSeats());
+      service.book(1, ticket.getPhoneNum() + 2, ticket.getSeats());
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(
+          BookingASystem.ERROR_MSG_SEAT + Seats.label(ticket.getSeats()[0]), e.getMessage());
+    }
+  }
+
+  @Test
+  public void capacity_index_follows_bookings_and_cancellations() {
+    BookingService service = new BookingService();
+    service.setShards(2);
+    service.setup(100, 2, 5, 2);
+    service.setup(200, 1, 10, 2);
+    service.setup(300, 4, 3, 2);
+    service.book(200, 61234567, seats("A3"));
+    Ticket ticket = service.book(100, 61234567, seats("A3", "B3"));
+
+    Assert.assertEquals(3, service.countShowsWithFreeSeats(8));
+    Assert.assertEquals(2, service.countShowsWithFreeSeats(9));
+    Assert.assertEquals(1, service.countShowsWithFreeRun(7));
+    Assert.assertEquals(0, service.countShowsWithFreeRun(8));
+    Assert.assertEquals(3, service.countShowsWithFreeRun(2));
+    Assert.assertArrayEquals(
+        new int[] {200, 300},
+        service.findShowsWithFreeRun(3, 5).stream().mapToInt(Show::getShowNum).toArray());
+    Assert.assertEquals(1, service.findShowsWithFreeRun(2, 1).size());
+
+    service.cancel(ticket.getTicketNum(), 61234567);
+    Assert.assertEquals(3, service.countShowsWithFreeRun(3));
+    Assert.assertEquals(2, service.countShowsWithFreeSeats(10));
+  }
+
+  @Test
+  public void view_pages_cover_every_ticket_once() {
+    BookingService service = new BookingService();
+    service.setup(100, 60, 10, 2);
+    for (int i = 0; i < 600; i++) {
+      service.bookBest(100, 61000000 + i, 1);
+    }
+    for (int ticketNum = 5; ticketNum < 600; ticketNum += 7) {
+      service.cancel(ticketNum, 61000000 + ticketNum - 1);
+    }
+    Show show = service.getShow(100);
+
+    ByteArrayOutputStream pages = new ByteArrayOutputStream();
+    int last = 0;
+    int pageCount = 0;
+    do {
+      last = show.printView(new PrintStream(pages), last, 100);
+      pageCount++;
+    } while (show.hasTicketsAfter(last));
+
+    String all = show.toString();
+    Assert.assertEquals(6, pageCount);
+    Assert.assertEquals(600 - 85, all.split("Ticket\\{").length - 1);
+    Assert.assertEquals(
+        all.split("Ticket\\{").length - 1,
+        pages.toString().split("Ticket\\{").length - 1);
+    Assert.assertFalse(all.contains("ticketNum=5,"));
+    Assert.assertTrue(all.contains("ticketNum=600, phoneNum=61000599,"));
+  }
+
+  @Test
+  public void seat_region_holds_seats_of_every_show() {
+    BookingService service = new BookingService();
+    SeatRegion region = new SeatRegion(1 << 20);
+    service.setSeatRegion(region);
+    service.setShards(2);
+    for (int showNum = 1; showNum <= 100; showNum++) {
+      service.setup(showNum, 26, 100, 2);
+      service.book(showNum, 61234567, seats("A1", "Z100"));
+      service.bookBest(showNum, 91234567, 10);
+    }
+    // a duplicate setup takes no region space
+    for (int i = 0; i < 10; i++) {
+      try {
+        service.setup(42, 26, 100, 2);
+        Assert.fail();
+      } catch (IllegalArgumentException e) {
+        Assert.assertEquals(BookingASystem.ERROR_MSG_DUPLICATE_SHOW, e.getMessage());
+      }
+    }
+
+    Assert.assertEquals(100 * (26 * 2 * 8 + 26 * 4), region.getUsed());
+    Show show = service.getShow(42);
+    Assert.assertTrue(show.getOccupiedSeats(0, 0));
+    Assert.assertTrue(show.getOccupiedSeats(25, 99));
+    Assert.assertEquals(26 * 100 - 12, show.getFreeSeats());
+    Assert.assertEquals(100, service.countShowsWithFreeRun(100));
+  }
+
+  private static int[] seats(String... labels) {
+    int[] seats = new int[labels.length];
+    for (int i = 0; i < labels.length; i++) {
+      seats[i] = Seats.parse(labels[i]);
+    }
+    return seats;
+  }
+
+  /** Clock that only moves when the test moves it */
+  private static class TestClock extends Clock {
+    long millis = 1_000_000;
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public long millis() {
+      return millis;
+    }
+
+    @Override
+    public Instant instant() {
+      return Instant.ofEpochMilli(millis);
+    }
+  }
+}
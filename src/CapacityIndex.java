@@ -0,0 +1,122 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Index of the shows of a BookingService by the seats they have left, both in total and next to
+ * each other in a row, so that "how many shows have N free seats" and "which shows can seat a
+ * group of N together" are answered in O(log) time however many shows there are, instead of by
+ * visiting every show.
+ *
+ * <p>Each key is kept in a Fenwick tree of show counts per key value, for counting the shows at
+ * or above a key, and in a skip list ordered by key and show number, for listing them. Both are
+ * updated without a lock, so shows on different shards refile themselves in parallel; a query
+ * racing a change may see a show under its old key or, briefly, under both.
+ */
+class CapacityIndex {
+  private static final int MAX_FREE_SEATS = BookingASystem.MAX_ROWS * BookingASystem.MAX_SEATS;
+
+  private final Ranking byFreeSeats = new Ranking(MAX_FREE_SEATS);
+  private final Ranking byFreeRun = new Ranking(BookingASystem.MAX_SEATS);
+
+  /**
+   * Files the show under its current free seats and longest free run, moving it from the keys it
+   * was filed under before. The caller must hold the show's monitor.
+   */
+  public void update(Show show) {
+    int freeSeats = Math.min(show.getFreeSeats(), MAX_FREE_SEATS);
+    int freeRun = Math.min(show.getLongestFreeRun(), BookingASystem.MAX_SEATS);
+    int oldFreeSeats = show.getIndexedFreeSeats();
+    int oldFreeRun = show.getIndexedFreeRun();
+    if (freeSeats != oldFreeSeats) {
+      byFreeSeats.move(show.getShowNum(), oldFreeSeats, freeSeats);
+    }
+    if (freeRun != oldFreeRun) {
+      byFreeRun.move(show.getShowNum(), oldFreeRun, freeRun);
+    }
+    show.setIndexedCapacity(freeSeats, freeRun);
+  }
+
+  /** Returns the number of shows with at least the given number of free seats */
+  public int countWithFreeSeats(int seatCount) {
+    return byFreeSeats.countAtLeast(seatCount);
+  }
+
+  /** Returns the number of shows with at least the given number of free seats in one row */
+  public int countWithFreeRun(int seatCount) {
+    return byFreeRun.countAtLeast(seatCount);
+  }
+
+  /**
+   * Returns the numbers of up to limit shows that can seat a group of the given size in one row,
+   * those with the longest free run first
+   */
+  public int[] findWithFreeRun(int seatCount, int limit) {
+    return byFreeRun.atLeast(seatCount, limit);
+  }
+
+  /** Shows ordered by one key */
+  private static final class Ranking {
+    private final int maxKey;
+    // Fenwick tree over key + 1, holding the number of shows filed under each key
+    private final AtomicIntegerArray counts;
+    // key in the high half and show number in the low half, so ordered by key then show
+    private final ConcurrentSkipListSet<Long> entries = new ConcurrentSkipListSet<>();
+
+    private Ranking(int maxKey) {
+      this.maxKey = maxKey;
+      this.counts = new AtomicIntegerArray(maxKey + 2);
+    }
+
+    /** Moves the show from the old key, -1 if it is not filed yet, to the new one */
+    private void move(int showNum, int oldKey, int newKey) {
+      entries.add(entry(newKey, showNum));
+      add(newKey, 1);
+      if (oldKey >= 0) {
+        entries.remove(entry(oldKey, showNum));
+        add(oldKey, -1);
+      }
+    }
+
+    private int countAtLeast(int key) {
+      if (key > maxKey) {
+        return 0;
+      }
+      return prefix(maxKey) - prefix(Math.max(key, 0) - 1);
+    }
+
+    private int[] atLeast(int key, int limit) {
+      int[] showNums = new int[Math.min(limit, countAtLeast(key))];
+      int found = 0;
+      Iterator<Long> it = entries.descendingIterator();
+      while (found < showNums.length && it.hasNext()) {
+        long entry = it.next();
+        if ((int) (entry >> 32) < key) {
+          break;
+        }
+        showNums[found++] = (int) entry;
+      }
+      return found == showNums.length ? showNums : Arrays.copyOf(showNums, found);
+    }
+
+    private void add(int key, int delta) {
+      for (int i = key + 1; i < counts.length(); i += i & -i) {
+        counts.getAndAdd(i, delta);
+      }
+    }
+
+    /** Returns the number of shows filed under keys up to and including the given key */
+    private int prefix(int key) {
+      int sum = 0;
+      for (int i = key + 1; i > 0; i -= i & -i) {
+        sum += counts.get(i);
+      }
+      return sum;
+    }
+
+    private static Long entry(int key, int showNum) {
+      return ((long) key << 32) | (showNum & 0xFFFFFFFFL);
+    }
+  }
+}
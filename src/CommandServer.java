@@ -0,0 +1,442 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking TCP server speaking the console's command protocol. Every connection is a session
+ * of its own, with its own mode, and gets exactly the responses the console prints, without the
+ * welcome text or prompts; EXIT closes the connection.
+ *
+ * <p>One selector thread accepts, reads and writes for all the connections and hands the complete
+ * lines received to a pool of worker threads. The lines of one connection are run in order, by
+ * one worker at a time, and different connections run in parallel. Workers do not wait for the
+ * journal: a response is held back until the journal records of its command are durable, so the
+ * commands of every connection share the journal's fsyncs and a slow command holds up only its
+ * own connection.
+ *
+ * <p>Clients may pipeline commands: responses are written back in the order the lines were
+ * received. A connection is not read while too many of its lines are waiting to run, and its
+ * lines are not run while too much of its output is waiting to be written, so a client that stops
+ * reading cannot make the server buffer without bound. Input and output go through direct buffers
+ * taken from a pool and returned when the connection closes.
+ */
+class CommandServer implements AutoCloseable {
+  private static final int BUFFER_SIZE = 1 << 14;
+  private static final int MAX_LINE_LENGTH = 1 << 20;
+  // lines are not run while more than this is waiting to be written
+  private static final int MAX_PENDING_OUTPUT = 1 << 16;
+  // a connection is not read while this many batches of its lines are waiting to run
+  private static final int MAX_QUEUED_BATCHES = 4;
+  private static final int WORKER_COUNT =
+      Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  private final BookingService service;
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final ExecutorService workers;
+  private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+  // responses finished by the workers, for the selector thread to write
+  private final Queue<Response> finished = new ConcurrentLinkedQueue<>();
+  // connections whose next response waits for the journal, only used by the selector thread
+  private final List<Connection> awaitingDurable = new ArrayList<>();
+  private volatile boolean running = true;
+
+  CommandServer(BookingService service, InetSocketAddress address) throws IOException {
+    this.service = service;
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    try {
+      server.bind(address);
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      server.close();
+      selector.close();
+      throw e;
+    }
+    workers =
+        Executors.newFixedThreadPool(
+            WORKER_COUNT,
+            command -> {
+              Thread thread = new Thread(command, "command-worker");
+              thread.setDaemon(true);
+              return thread;
+            });
+    service.setDurableListener(selector::wakeup);
+  }
+
+  /** Returns the port the server listens on */
+  public int getPort() throws IOException {
+    return ((InetSocketAddress) server.getLocalAddress()).getPort();
+  }
+
+  /** Serves connections until the server is closed, then closes every connection */
+  public void run() throws IOException {
+    try {
+      while (running) {
+        selector.select();
+        List<Connection> ready = new ArrayList<>(awaitingDurable);
+        awaitingDurable.clear();
+        for (Response response; (response = finished.poll()) != null; ) {
+          if (response.connection.isOpen()) {
+            response.connection.responses.add(response);
+            ready.add(response.connection);
+          }
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              connection.read();
+            }
+          } catch (IOException e) {
+            // the client went away, the other connections carry on
+            connection.close();
+          }
+          ready.add(connection);
+        }
+        for (Connection connection : ready) {
+          connection.serve();
+        }
+      }
+    } finally {
+      service.setDurableListener(null);
+      workers.shutdown();
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof Connection) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      server.close();
+      selector.close();
+    }
+  }
+
+  /** Stops the server, making run return; may be called from any thread */
+  @Override
+  public void close() {
+    running = false;
+    selector.wakeup();
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = server.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+  }
+
+  private ByteBuffer takeBuffer() {
+    ByteBuffer buffer = bufferPool.poll();
+    return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+  }
+
+  private void returnBuffer(ByteBuffer buffer) {
+    if (buffer.capacity() == BUFFER_SIZE) {
+      buffer.clear();
+      bufferPool.push(buffer);
+    }
+  }
+
+  /** Output of a run of lines of one connection, with the journal record it must wait for */
+  private static final class Response {
+    private final Connection connection;
+    private final byte[] bytes;
+    private final long seq;
+    // true for the last response to a batch of lines
+    private final boolean endOfBatch;
+    // true if the last line run was EXIT
+    private final boolean exit;
+
+    private Response(
+        Connection connection, byte[] bytes, long seq, boolean endOfBatch, boolean exit) {
+      this.connection = connection;
+      this.bytes = bytes;
+      this.seq = seq;
+      this.endOfBatch = endOfBatch;
+      this.exit = exit;
+    }
+  }
+
+  /**
+   * One client with its session, its unread input, its lines waiting to run and its unwritten
+   * responses. The session and the fields after it are only used by the worker running the
+   * connection's lines; the scheduled flag makes sure there is at most one.
+   */
+  private final class Connection implements Runnable {
+    private final SocketChannel channel;
+    private final ArrayDeque<Response> responses = new ArrayDeque<>();
+    private final Queue<ByteBuffer> batches = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    // bytes handed to the selector thread and not yet written to the socket
+    private final AtomicInteger unwritten = new AtomicInteger();
+    private SelectionKey key;
+    // received bytes, in fill mode, lines before scanFrom have no newline
+    private ByteBuffer input = takeBuffer();
+    private ByteBuffer pending = takeBuffer();
+    private int scanFrom;
+    private int queuedBatches;
+    private boolean exited;
+    private boolean endOfInput;
+    private volatile boolean closed;
+
+    private final CommandSession session = new CommandSession(service, true);
+    private final ByteSequence line = new ByteSequence();
+    private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(sink, false);
+    // the batch being run, kept while the worker is paused
+    private ByteBuffer batch;
+    private boolean sessionExited;
+    private long seq;
+
+    private Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private boolean isOpen() {
+      return input != null;
+    }
+
+    /** Reads what the client has sent and queues the complete lines to run */
+    private void read() throws IOException {
+      if (!input.hasRemaining()) {
+        if (input.capacity() >= MAX_LINE_LENGTH) {
+          throw new IOException("Command line longer than " + MAX_LINE_LENGTH + " bytes");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(input.capacity() * 2);
+        input.flip();
+        grown.put(input);
+        returnBuffer(input);
+        input = grown;
+      }
+      if (channel.read(input) < 0) {
+        endOfInput = true;
+        int end = input.position();
+        if (end > 0 && input.get(end - 1) != '\n') {
+          input.put((byte) '\n');
+        }
+      }
+      queueLines();
+    }
+
+    /** Hands the complete lines received to a worker as one batch, in the order received */
+    private void queueLines() {
+      int end = input.position();
+      int batchEnd = 0;
+      for (int i = end - 1; i >= scanFrom; i--) {
+        if (input.get(i) == '\n') {
+          batchEnd = i + 1;
+          break;
+        }
+      }
+      if (batchEnd == 0) {
+        scanFrom = end;
+        return;
+      }
+      byte[] lines = new byte[batchEnd];
+      input.flip();
+      input.get(lines);
+      input.compact();
+      scanFrom = 0;
+      queuedBatches++;
+      batches.add(ByteBuffer.wrap(lines));
+      if (scheduled.compareAndSet(false, true)) {
+        workers.execute(this);
+      }
+    }
+
+    /**
+     * Writes the responses whose journal records are durable, in order, and decides whether to
+     * read more. The connection is closed once the client has sent EXIT or closed its side and
+     * every response has been written.
+     */
+    private void serve() {
+      if (!isOpen()) {
+        return;
+      }
+      try {
+        Response response;
+        while (!exited
+            && (response = responses.peek()) != null
+            && service.isDurable(response.seq)) {
+          responses.poll();
+          ensure(response.bytes.length).put(response.bytes);
+          queuedBatches -= response.endOfBatch ? 1 : 0;
+          exited = response.exit;
+        }
+        if (!exited && !responses.isEmpty()) {
+          awaitingDurable.add(this);
+        }
+        if (!drain()) {
+          key.interestOps(SelectionKey.OP_WRITE);
+          return;
+        }
+      } catch (IOException | UncheckedIOException e) {
+        // the client went away or its responses can never be made durable
+        close();
+        return;
+      }
+      if (exited || (endOfInput && queuedBatches == 0 && responses.isEmpty())) {
+        close();
+        return;
+      }
+      boolean readable = !endOfInput && queuedBatches < MAX_QUEUED_BATCHES;
+      key.interestOps(readable ? SelectionKey.OP_READ : 0);
+    }
+
+    /**
+     * Writes as much of the pending output as the socket takes, letting a paused worker go on once
+     * little enough is left
+     *
+     * @return true if nothing is left to write
+     */
+    private boolean drain() throws IOException {
+      pending.flip();
+      int written = channel.write(pending);
+      pending.compact();
+      boolean drained = unwritten.addAndGet(-written) <= MAX_PENDING_OUTPUT;
+      if (drained && paused.compareAndSet(true, false)) {
+        workers.execute(this);
+      }
+      if (pending.position() > 0) {
+        return false;
+      }
+      if (pending.capacity() != BUFFER_SIZE) {
+        // a long response has been written, go back to a pooled buffer
+        returnBuffer(pending);
+        pending = takeBuffer();
+      }
+      return true;
+    }
+
+    private ByteBuffer ensure(int length) {
+      if (pending.remaining() < length) {
+        int capacity = pending.capacity();
+        while (capacity - pending.position() < length) {
+          capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        pending.flip();
+        grown.put(pending);
+        returnBuffer(pending);
+        pending = grown;
+      }
+      return pending;
+    }
+
+    /** Runs the queued lines on a worker thread until none is left or too much output waits */
+    @Override
+    public void run() {
+      do {
+        if (batch == null) {
+          batch = batches.poll();
+        }
+        while (batch != null) {
+          if (!runBatch()) {
+            return;
+          }
+          batch = batches.poll();
+        }
+        scheduled.set(false);
+      } while (!batches.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Runs the lines left in the batch, handing the output to the selector thread whenever enough
+     * has been printed and once at the end
+     *
+     * @return false if the worker paused because too much output is waiting to be written
+     */
+    private boolean runBatch() {
+      if (sessionExited || closed) {
+        // the lines after EXIT, or of a client gone away, are not run
+        return true;
+      }
+      int end = batch.limit();
+      for (int start = batch.position(); start < end && !sessionExited && !closed; ) {
+        if (unwritten.get() > MAX_PENDING_OUTPUT) {
+          paused.set(true);
+          // the selector thread may have written everything before the flag was set
+          if (unwritten.get() > MAX_PENDING_OUTPUT || !paused.compareAndSet(true, false)) {
+            return false;
+          }
+        }
+        int i = start;
+        while (batch.get(i) != '\n') {
+          i++;
+        }
+        int lineEnd = i > start && batch.get(i - 1) == '\r' ? i - 1 : i;
+        line.reset(batch, start, lineEnd - start);
+        seq =
+            Math.max(
+                seq,
+                service.runDeferringDurability(
+                    () -> sessionExited = !session.execute(line, out)));
+        start = i + 1;
+        ((Buffer) batch).position(start);
+        if (sink.size() >= MAX_PENDING_OUTPUT) {
+          respond(false);
+        }
+      }
+      respond(true);
+      return true;
+    }
+
+    private void respond(boolean endOfBatch) {
+      out.flush();
+      byte[] bytes = sink.toByteArray();
+      sink.reset();
+      unwritten.addAndGet(bytes.length);
+      finished.add(new Response(this, bytes, seq, endOfBatch, sessionExited));
+      selector.wakeup();
+    }
+
+    private void close() {
+      closed = true;
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // nothing left to do for the client
+      }
+      if (input != null) {
+        returnBuffer(input);
+        returnBuffer(pending);
+        input = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class CommandServerTest {
+  private BookingService service;
+  private CommandServer server;
+  private Thread serverThread;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    startServer(new BookingService());
+  }
+
+  private void startServer(BookingService service) throws Exception {
+    this.service = service;
+    server = new CommandServer(service, new InetSocketAddress("127.0.0.1", 0));
+    serverThread =
+        new Thread(
+            () -> {
+              try {
+                server.run();
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    serverThread.start();
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    server.close();
+    serverThread.join(10_000);
+  }
+
+  @Test
+  public void pipelined_commands_answered_in_order() throws Exception {
+    try (Socket admin = connect();
+        Socket buyer = connect()) {
+      // each connection has its own mode
+      buyer
+          .getOutputStream()
+          .write("MODE BUYER\r\nSETUP 100 10 10 2\n".getBytes(StandardCharsets.US_ASCII));
+      Assert.assertEquals(
+          BookingASystem.MSG_SETUP + "\n" + BookingASystem.MSG_MODE_ADMIN + "\n",
+          send(admin, "SETUP 100 10 10 2\nMODE ADMIN\nEXIT\nSETUP 200 1 1 1\n"));
+
+      ByteArrayOutputStream commands = new ByteArrayOutputStream();
+      PrintStream expected = new PrintStream(commands, true);
+      BookingASystem.printCommands(expected);
+      Assert.assertEquals(
+          BookingASystem.MSG_MODE_BUYER
+              + "\n"
+              + BookingASystem.ERROR_MSG_INVALID_INPUT
+              + BookingASystem.ERROR_MSG_MODE
+              + "\n"
+              + commands
+              + BookingASystem.MSG_BOOK
+              + "1\n",
+          send(buyer, "BOOK 100 61234567 D3\nEXIT\n"));
+    }
+    Assert.assertNull(service.getShow(200));
+    Assert.assertEquals(99, service.getShow(100).getFreeSeats());
+  }
+
+  @Test
+  public void last_line_runs_when_client_closes_its_side() throws Exception {
+    service.setup(100, 10, 10, 2);
+    try (Socket client = connect()) {
+      client.getOutputStream().write("VIEW 100".getBytes(StandardCharsets.US_ASCII));
+      client.shutdownOutput();
+      Assert.assertEquals(service.getShow(100).toString() + "\n", readAll(client));
+    }
+  }
+
+  @Test
+  public void checkpoint_refused_over_the_network() throws Exception {
+    service.setup(100, 10, 10, 2);
+    Path snapshotFile = Files.createTempFile("snapshot", ".bin");
+    Files.delete(snapshotFile);
+    ByteArrayOutputStream commands = new ByteArrayOutputStream();
+    BookingASystem.printCommands(new PrintStream(commands, true));
+    try (Socket admin = connect()) {
+      Assert.assertEquals(
+          BookingASystem.ERROR_MSG_INVALID_INPUT
+              + BookingASystem.ERROR_MSG_REMOTE_CHECKPOINT
+              + "\n"
+              + commands,
+          send(admin, "CHECKPOINT " + snapshotFile + "\nEXIT\n"));
+    } finally {
+      Assert.assertFalse(Files.deleteIfExists(snapshotFile));
+    }
+    Assert.assertFalse(Files.exists(Paths.get(snapshotFile + ".tmp")));
+  }
+
+  @Test
+  public void long_responses_are_written_in_full() throws Exception {
+    service.setup(100, 702, 1000, 2);
+    StringBuilder commands = new StringBuilder("MODE BUYER\n");
+    for (int i = 0; i < 10; i++) {
+      commands.append("AVAILABILITY 100\n");
+    }
+    ByteArrayOutputStream availability = new ByteArrayOutputStream();
+    service.getShow(100).printAvailability(new PrintStream(availability, true));
+    StringBuilder expected = new StringBuilder(BookingASystem.MSG_MODE_BUYER + "\n");
+    for (int i = 0; i < 10; i++) {
+      expected.append(availability);
+    }
+    try (Socket client = connect()) {
+      Assert.assertEquals(expected.toString(), send(client, commands + "EXIT\n"));
+    }
+  }
+
+  @Test
+  public void journaled_commands_of_all_clients_share_fsyncs() throws Exception {
+    server.close();
+    serverThread.join(10_000);
+    Path journalFile = Files.createTempFile("journal", ".bin");
+    Files.delete(journalFile);
+    BookingService journaled = new BookingService();
+    try (Journal journal = Journal.open(journalFile, journaled)) {
+      journaled.setJournal(journal);
+      journaled.setup(100, 26, 10, 2);
+      startServer(journaled);
+      long syncs = journal.getSyncCount();
+      try (Socket first = connect();
+          Socket second = connect()) {
+        Socket[] clients = {first, second};
+        for (int client = 0; client < clients.length; client++) {
+          StringBuilder commands = new StringBuilder("MODE BUYER\n");
+          for (int i = 0; i < 100; i++) {
+            String seat = Seats.label(Seats.code(client * 10 + i / 10, i % 10));
+            commands.append("BOOK 100 ").append(61230000 + client * 100 + i).append(' ');
+            commands.append(seat).append('\n');
+          }
+          clients[client].getOutputStream().write(commands.append("EXIT\n").toString().getBytes());
+        }
+        for (Socket client : clients) {
+          String[] responses = readAll(client).split("\n");
+          Assert.assertEquals(101, responses.length);
+          for (int i = 1; i < responses.length; i++) {
+            Assert.assertTrue(responses[i].startsWith(BookingASystem.MSG_BOOK));
+          }
+        }
+      }
+      Assert.assertEquals(60, journaled.getShow(100).getFreeSeats());
+      // one fsync per command, as when every command waited for its own, would make 200
+      Assert.assertTrue(journal.getSyncCount() - syncs < 100);
+    } finally {
+      Files.deleteIfExists(journalFile);
+    }
+  }
+
+  private Socket connect() throws Exception {
+    return new Socket("127.0.0.1", server.getPort());
+  }
+
+  /** Sends the commands, which end with EXIT, and returns everything sent back */
+  private static String send(Socket socket, String commands) throws Exception {
+    socket.getOutputStream().write(commands.getBytes(StandardCharsets.US_ASCII));
+    return readAll(socket);
+  }
+
+  private static String readAll(Socket socket) throws Exception {
+    socket.setSoTimeout(10_000);
+    InputStream in = socket.getInputStream();
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    for (int n; (n = in.read(chunk)) >= 0; ) {
+      received.write(chunk, 0, n);
+    }
+    return new String(received.toByteArray(), StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,234 @@
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Applies command lines from one user to a BookingService and prints the responses, remembering
+ * the user's mode between commands. The interactive console and batch mode both run through a
+ * session so that they print exactly the same responses.
+ */
+class CommandSession {
+  private final BookingService service;
+  private final CommandTokenizer tokens = new CommandTokenizer();
+  // network users may not make the server write files
+  private final boolean isRemote;
+  private boolean isAdminMode = true;
+
+  CommandSession(BookingService service) {
+    this(service, false);
+  }
+
+  CommandSession(BookingService service, boolean isRemote) {
+    this.service = service;
+    this.isRemote = isRemote;
+  }
+
+  public boolean isAdminMode() {
+    return isAdminMode;
+  }
+
+  /**
+   * Runs one command line and prints its response to out
+   *
+   * @return false if the line is the EXIT command, which prints nothing
+   */
+  public boolean execute(CharSequence input, PrintStream out) {
+    if (isExit(input)) {
+      return false;
+    }
+    long start = System.nanoTime();
+    String command = null;
+    String rejection = null;
+    InputParam param;
+    try {
+      Ticket ticket;
+      param = BookingASystem.checkInput(tokens.reset(input), service, isAdminMode);
+      command = param.getCommand();
+      switch (param.getCommand()) {
+        case BookingASystem.COMMAND_MODE:
+          if (!param.isAdmin()) {
+            isAdminMode = false;
+            out.println(BookingASystem.MSG_MODE_BUYER);
+          } else {
+            isAdminMode = true;
+            out.println(BookingASystem.MSG_MODE_ADMIN);
+          }
+          break;
+
+        case BookingASystem.COMMAND_SETUP:
+          service.setup(
+              param.getShowNum(),
+              param.getTotalRows(),
+              param.getTotalSeats(),
+              param.getCancellationWindow());
+          out.println(BookingASystem.MSG_SETUP);
+          break;
+
+        case BookingASystem.COMMAND_VIEW:
+          if (param.getViewLimit() > 0) {
+            printViewPage(param, out);
+          } else {
+            service.getShow(param.getShowNum()).printView(out);
+          }
+          break;
+
+        case BookingASystem.COMMAND_AVAILABILITY:
+          service.getShow(param.getShowNum()).printAvailability(out);
+          break;
+
+        case BookingASystem.COMMAND_SEATSLEFT:
+          Show show = service.getShow(param.getShowNum());
+          out.println(
+              BookingASystem.MSG_SEATSLEFT
+                  + show.getShowNum()
+                  + ": "
+                  + show.getFreeSeats()
+                  + BookingASystem.MSG_SEATSLEFT_TOGETHER
+                  + show.getLongestFreeRun());
+          break;
+
+        case BookingASystem.COMMAND_FINDSHOWS:
+          printShowsWithSeats(param.getSeatCount(), out);
+          break;
+
+        case BookingASystem.COMMAND_BOOK:
+          if (param.getSeatCount() > 0) {
+            ticket = service.bookBest(param.getShowNum(), param.getPhoneNum(), param.getSeatCount());
+          } else {
+            ticket = service.book(param.getShowNum(), param.getPhoneNum(), param.getSeats());
+          }
+          out.println(BookingASystem.MSG_BOOK + ticket.getTicketNum());
+          break;
+
+        case BookingASystem.COMMAND_BOOKBATCH:
+          BookingBatch batch = service.bookBatch(param.getBatch());
+          // one response for the whole batch, entries that were rejected say why
+          batch.appendTo(new TextBuffer(64 + batch.size() * 48)).writeTo(out);
+          break;
+
+        case BookingASystem.COMMAND_CANCEL:
+          long exceededMins = service.cancel(param.getTicketNum(), param.getPhoneNum());
+          if (exceededMins == 0) {
+            out.println(BookingASystem.MSG_CANCEL_SUCCESS + param.getTicketNum());
+          } else {
+            out.println(BookingASystem.MSG_CANCEL_FAILURE + (int) exceededMins);
+            rejection = CommandStats.CANCELLATION_WINDOW_EXCEEDED;
+          }
+          break;
+
+        case BookingASystem.COMMAND_MYTICKETS:
+          printTicketsOfPhone(param.getPhoneNum(), out);
+          break;
+
+        case BookingASystem.COMMAND_HOLD:
+          Hold hold;
+          if (param.getSeatCount() > 0) {
+            hold = service.holdBest(param.getShowNum(), param.getPhoneNum(), param.getSeatCount());
+          } else {
+            hold = service.hold(param.getShowNum(), param.getPhoneNum(), param.getSeats());
+          }
+          out.println(
+              BookingASystem.MSG_HOLD
+                  + hold.getHoldNum()
+                  + BookingASystem.MSG_HOLD_EXPIRY
+                  + service.getHoldTtl() / 1000);
+          break;
+
+        case BookingASystem.COMMAND_CONFIRM:
+          ticket = service.confirm(param.getHoldNum(), param.getPhoneNum());
+          out.println(BookingASystem.MSG_BOOK + ticket.getTicketNum());
+          break;
+
+        case BookingASystem.COMMAND_CHECKPOINT:
+          if (isRemote) {
+            throw new IllegalArgumentException(BookingASystem.ERROR_MSG_REMOTE_CHECKPOINT);
+          }
+          service.checkpoint(Paths.get(param.getFileName()));
+          out.println(BookingASystem.MSG_CHECKPOINT);
+          break;
+
+        case BookingASystem.COMMAND_STATS:
+          service.getStats().print(out);
+          break;
+      }
+    } catch (Exception e) {
+      if (command == null && tokens.size() > 0) {
+        command = tokens.match(0, BookingASystem.COMMANDS);
+      }
+      rejection = BookingASystem.errorCode(e);
+      out.println(BookingASystem.ERROR_MSG_INVALID_INPUT + e.getMessage());
+      BookingASystem.printCommands(out);
+    }
+    service.getStats().record(command, System.nanoTime() - start, rejection);
+    return true;
+  }
+
+  /** Prints the number of live tickets of the phone number, then a line per ticket */
+  private void printTicketsOfPhone(int phoneNum, PrintStream out) {
+    List<Ticket> tickets = service.getTicketsOfPhone(phoneNum);
+    TextBuffer buffer = new TextBuffer(64 + tickets.size() * 48);
+    buffer.append(BookingASystem.MSG_MYTICKETS).append(phoneNum).append(": ");
+    buffer.append(tickets.size()).newLine();
+    for (Ticket ticket : tickets) {
+      buffer.append("    #").append(ticket.getTicketNum());
+      buffer.append(" for Show Number ").append(ticket.getShowNum()).append(", seats=");
+      Seats.appendLabels(buffer, ticket.getSeats()).newLine();
+    }
+    buffer.writeTo(out);
+  }
+
+  /** Prints a page of VIEW, followed by the command for the next page if there are more tickets */
+  private void printViewPage(InputParam param, PrintStream out) {
+    Show show = service.getShow(param.getShowNum());
+    int last = show.printView(out, param.getTicketNum(), param.getViewLimit());
+    out.println();
+    if (show.hasTicketsAfter(last)) {
+      out.println(
+          BookingASystem.MSG_VIEW_MORE
+              + BookingASystem.COMMAND_VIEW
+              + " "
+              + show.getShowNum()
+              + " "
+              + last
+              + " "
+              + param.getViewLimit());
+    }
+  }
+
+  /**
+   * Prints how many shows have the given number of seats left, how many have them together in a
+   * row, and the shows with the most seats together
+   */
+  private void printShowsWithSeats(int seatCount, PrintStream out) {
+    out.println(
+        BookingASystem.MSG_FINDSHOWS
+            + seatCount
+            + " seats left: "
+            + service.countShowsWithFreeSeats(seatCount)
+            + ", together in a row: "
+            + service.countShowsWithFreeRun(seatCount));
+    for (Show show : service.findShowsWithFreeRun(seatCount, BookingASystem.MAX_FOUND_SHOWS)) {
+      out.println(
+          "    "
+              + show.getShowNum()
+              + ": "
+              + show.getFreeSeats()
+              + " left, "
+              + show.getLongestFreeRun()
+              + " together");
+    }
+  }
+
+  private static boolean isExit(CharSequence input) {
+    String exit = BookingASystem.COMMAND_EXIT;
+    if (input.length() != exit.length()) {
+      return false;
+    }
+    for (int i = 0; i < exit.length(); i++) {
+      if (Character.toUpperCase(input.charAt(i)) != exit.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
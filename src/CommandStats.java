@@ -0,0 +1,88 @@
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counters of every command, shared by the sessions and front ends
+ * of a BookingService. A command either succeeds or is rejected for a reason, the reason being
+ * the code of its error message, see BookingASystem.errorCode. Recording is lock-free, so it can
+ * stay on in production.
+ */
+class CommandStats {
+  public static final String UNKNOWN_COMMAND = "UNKNOWN";
+  public static final String CANCELLATION_WINDOW_EXCEEDED = "CANCELLATION_WINDOW_EXCEEDED";
+
+  // filled by the constructor and only read afterwards
+  private final Map<String, CommandMetrics> metrics = new LinkedHashMap<>();
+
+  private static final class CommandMetrics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder succeeded = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> rejected = new ConcurrentHashMap<>();
+  }
+
+  CommandStats() {
+    for (String command : BookingASystem.COMMANDS) {
+      metrics.put(command, new CommandMetrics());
+    }
+    metrics.put(UNKNOWN_COMMAND, new CommandMetrics());
+  }
+
+  /**
+   * Records one run of a command
+   *
+   * @param command the command, anything not in BookingASystem.COMMANDS counts as unknown
+   * @param rejection null if the command succeeded, otherwise the reason it was rejected
+   */
+  public void record(String command, long nanos, String rejection) {
+    CommandMetrics m = command != null ? metrics.get(command) : null;
+    if (m == null) {
+      m = metrics.get(UNKNOWN_COMMAND);
+    }
+    m.latency.record(nanos);
+    if (rejection == null) {
+      m.succeeded.increment();
+    } else {
+      m.rejected.computeIfAbsent(rejection, reason -> new LongAdder()).increment();
+    }
+  }
+
+  public long getCount(String command) {
+    return metrics.get(command).latency.getCount();
+  }
+
+  public long getSucceeded(String command) {
+    return metrics.get(command).succeeded.sum();
+  }
+
+  public long getRejected(String command, String reason) {
+    LongAdder count = metrics.get(command).rejected.get(reason);
+    return count != null ? count.sum() : 0;
+  }
+
+  /** Prints the latency percentiles and outcomes of every command that has run */
+  public void print(PrintStream out) {
+    out.println("-- Command statistics, latency in microseconds:");
+    for (Map.Entry<String, CommandMetrics> entry : metrics.entrySet()) {
+      LatencyHistogram latency = entry.getValue().latency;
+      long count = latency.getCount();
+      if (count == 0) {
+        continue;
+      }
+      out.println(
+          entry.getKey()
+              + ": count="
+              + count
+              + ", ok="
+              + entry.getValue().succeeded.sum()
+              + ", "
+              + latency.formatPercentiles());
+      for (Map.Entry<String, LongAdder> reason : entry.getValue().rejected.entrySet()) {
+        out.println("    rejected " + reason.getKey() + "=" + reason.getValue().sum());
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class CommandStatsTest {
+  @Test
+  public void session_records_successes_and_rejections() {
+    BookingService service = new BookingService();
+    CommandSession session = new CommandSession(service);
+    PrintStream out = new PrintStream(new ByteArrayOutputStream(), true);
+    session.execute("SETUP 100 10 10 2", out);
+    session.execute("MODE BUYER", out);
+    session.execute("BOOK 100 61234567 D3,D4", out);
+    session.execute("BOOK 100 61234567 D5", out);
+    session.execute("BOOK 100 91234567 D4", out);
+    session.execute("BOOK 100 x D6", out);
+    session.execute("PAY 100", out);
+    session.execute("STATS", out);
+
+    CommandStats stats = service.getStats();
+    Assert.assertEquals(4, stats.getCount(BookingASystem.COMMAND_BOOK));
+    Assert.assertEquals(1, stats.getSucceeded(BookingASystem.COMMAND_BOOK));
+    Assert.assertEquals(1, stats.getRejected(BookingASystem.COMMAND_BOOK, "DUPLICATE_PHONE"));
+    Assert.assertEquals(1, stats.getRejected(BookingASystem.COMMAND_BOOK, "SEAT"));
+    Assert.assertEquals(1, stats.getRejected(BookingASystem.COMMAND_BOOK, "INVALID_NUMBER"));
+    Assert.assertEquals(1, stats.getRejected(CommandStats.UNKNOWN_COMMAND, "COMMAND"));
+    Assert.assertEquals(1, stats.getRejected(BookingASystem.COMMAND_STATS, "MODE"));
+    Assert.assertEquals(1, stats.getSucceeded(BookingASystem.COMMAND_SETUP));
+  }
+
+  @Test
+  public void stats_prints_commands_that_ran() {
+    BookingService service = new BookingService();
+    CommandSession session = new CommandSession(service);
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(captured, true);
+    session.execute("SETUP 100 10 10 2", out);
+    session.execute("SETUP 100 10 10 2", out);
+    captured.reset();
+    session.execute("STATS", out);
+
+    String[] lines = captured.toString().split("\n");
+    Assert.assertEquals(3, lines.length);
+    Assert.assertEquals("-- Command statistics, latency in microseconds:", lines[0]);
+    Assert.assertTrue(lines[1], lines[1].startsWith("SETUP: count=2, ok=1, p50="));
+    Assert.assertEquals("    rejected DUPLICATE_SHOW=1", lines[2]);
+  }
+}
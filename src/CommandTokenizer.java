@@ -0,0 +1,194 @@
+import java.util.Arrays;
+
+/**
+ * Splits a command line into space separated tokens by recording token boundaries over the
+ * original CharSequence, so that commands can be matched and numbers and seat labels parsed in
+ * place. A tokenizer is reused across lines and allocates nothing once its buffers have grown to
+ * fit the input; only error messages copy characters out of the line.
+ */
+class CommandTokenizer {
+  private CharSequence input;
+
+  private int[] starts = new int[8];
+  private int[] ends = new int[8];
+  private int size;
+
+  // seats of the last splitSeats call, the code is -1 for a malformed label
+  private int[] seatStarts = new int[16];
+  private int[] seatEnds = new int[16];
+  private int[] seatCodes = new int[16];
+  private int seatCount;
+
+  /** Tokenizes a new line, invalidating the tokens and seats of the previous one */
+  public CommandTokenizer reset(CharSequence input) {
+    this.input = input;
+    size = 0;
+    seatCount = 0;
+    int length = input.length();
+    int i = 0;
+    while (i < length) {
+      while (i < length && input.charAt(i) == ' ') {
+        i++;
+      }
+      if (i == length) {
+        break;
+      }
+      int start = i;
+      while (i < length && input.charAt(i) != ' ') {
+        i++;
+      }
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = i;
+      size++;
+    }
+    return this;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int length(int index) {
+    return ends[index] - starts[index];
+  }
+
+  public char charAt(int index, int pos) {
+    return input.charAt(starts[index] + pos);
+  }
+
+  /** Copies the token out of the line, only meant for error messages and stored labels */
+  public String token(int index) {
+    return input.subSequence(starts[index], ends[index]).toString();
+  }
+
+  public boolean equalsIgnoreCase(int index, String value) {
+    int start = starts[index];
+    int length = ends[index] - start;
+    if (length != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = input.charAt(start + i);
+      char v = value.charAt(i);
+      if (c != v && Character.toUpperCase(c) != Character.toUpperCase(v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the first of the candidates that the token matches ignoring case, so that the caller
+   * can switch on the candidate constant without upper-casing a copy of the token
+   *
+   * @return the matching candidate, or null if there is none
+   */
+  public String match(int index, String[] candidates) {
+    for (String candidate : candidates) {
+      if (equalsIgnoreCase(index, candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parses the token as a signed decimal integer, accepting exactly what Integer.parseInt accepts
+   *
+   * @exception NumberFormatException with the same message as Integer.parseInt if the token is not
+   *     a parsable integer
+   */
+  public int parseInt(int index) {
+    return parseInt(starts[index], ends[index]);
+  }
+
+  /**
+   * Splits the token on commas into seat labels, skipping empty labels, and parses each into a seat
+   * code. Labels that are not a row letter followed by a seat number are kept with a code of -1 so
+   * that the caller can report them.
+   *
+   * @return the number of seat labels found
+   */
+  public int splitSeats(int index) {
+    seatCount = 0;
+    int end = ends[index];
+    int i = starts[index];
+    while (i < end) {
+      int start = i;
+      while (i < end && input.charAt(i) != ',') {
+        i++;
+      }
+      if (i > start) {
+        addSeat(start, i);
+      }
+      i++;
+    }
+    return seatCount;
+  }
+
+  /** Returns the code of the seat as built by Seats.code, or -1 if its label is malformed */
+  public int seatCode(int seat) {
+    return seatCodes[seat];
+  }
+
+  /** Copies the seat label out of the line, only meant for error messages and stored labels */
+  public String seatLabel(int seat) {
+    return input.subSequence(seatStarts[seat], seatEnds[seat]).toString();
+  }
+
+  private void addSeat(int start, int end) {
+    if (seatCount == seatStarts.length) {
+      int capacity = seatCount * 2;
+      seatStarts = Arrays.copyOf(seatStarts, capacity);
+      seatEnds = Arrays.copyOf(seatEnds, capacity);
+      seatCodes = Arrays.copyOf(seatCodes, capacity);
+    }
+    seatStarts[seatCount] = start;
+    seatEnds[seatCount] = end;
+    seatCodes[seatCount] = Seats.parse(input, start, end);
+    seatCount++;
+  }
+
+  private int parseInt(int start, int end) {
+    boolean negative = false;
+    int limit = -Integer.MAX_VALUE;
+    int i = start;
+    char first = input.charAt(i);
+    if (first < '0') {
+      if (first == '-') {
+        negative = true;
+        limit = Integer.MIN_VALUE;
+      } else if (first != '+') {
+        throw numberFormat(start, end);
+      }
+      if (end - start == 1) {
+        throw numberFormat(start, end);
+      }
+      i++;
+    }
+    // accumulate negatively so that Integer.MIN_VALUE does not overflow
+    int multmin = limit / 10;
+    int result = 0;
+    for (; i < end; i++) {
+      int digit = input.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || result < multmin) {
+        throw numberFormat(start, end);
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw numberFormat(start, end);
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  private NumberFormatException numberFormat(int start, int end) {
+    return new NumberFormatException(
+        "For input string: \"" + input.subSequence(start, end) + "\"");
+  }
+}
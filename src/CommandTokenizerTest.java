@@ -0,0 +1,53 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class CommandTokenizerTest {
+  @Test
+  public void reset_splits_on_spaces() {
+    CommandTokenizer tokens = new CommandTokenizer().reset("  book  100 61234567   D3,,d4, ");
+
+    Assert.assertEquals(4, tokens.size());
+    Assert.assertEquals("BOOK", tokens.match(0, new String[] {"SETUP", "BOOK"}));
+    Assert.assertEquals(100, tokens.parseInt(1));
+    Assert.assertEquals(2, tokens.splitSeats(3));
+    Assert.assertEquals("D3", tokens.seatLabel(0));
+    Assert.assertEquals(Seats.code(3, 3), tokens.seatCode(1));
+    Assert.assertEquals("D3,,d4,", tokens.token(3));
+  }
+
+  @Test
+  public void split_seats_marks_malformed_labels() {
+    CommandTokenizer tokens =
+        new CommandTokenizer().reset("BOOK 1 61234567 D,1A,D0,D-1,A99999999999");
+
+    Assert.assertEquals(5, tokens.splitSeats(3));
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(-1, tokens.seatCode(i));
+    }
+  }
+
+  @Test
+  public void parse_int_matches_integer_parse_int() {
+    String[] inputs = {
+      "0", "7", "-7", "+7", "-", "+", "12a", "a12", "--1", "2147483647", "2147483648",
+      "-2147483648", "-2147483649", "99999999999", "00042", "1.5"
+    };
+    CommandTokenizer tokens = new CommandTokenizer();
+    for (String input : inputs) {
+      tokens.reset("X " + input);
+      String expected;
+      try {
+        expected = String.valueOf(Integer.parseInt(input));
+      } catch (NumberFormatException e) {
+        expected = e.getMessage();
+      }
+      String actual;
+      try {
+        actual = String.valueOf(tokens.parseInt(1));
+      } catch (NumberFormatException e) {
+        actual = e.getMessage();
+      }
+      Assert.assertEquals(input, expected, actual);
+    }
+  }
+}
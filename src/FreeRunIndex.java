@@ -0,0 +1,92 @@
+/**
+ * Segment tree over the rows of a SeatMap holding the longest run of free seats in each row, so
+ * that the front-most row with room for a block of seats is found in O(log rows) instead of by
+ * scanning the venue. A row whose seats change is only marked dirty; its run is recomputed from
+ * the seat bits on the next query, so single-seat bookings pay nothing for the index.
+ */
+class FreeRunIndex {
+  private final SeatMap seatMap;
+  private final int leaves;
+  private final int[] tree;
+  private final long[] dirty;
+  private boolean hasDirty;
+
+  FreeRunIndex(SeatMap seatMap) {
+    this.seatMap = seatMap;
+    int rows = seatMap.getTotalRows();
+    int size = 1;
+    while (size < rows) {
+      size <<= 1;
+    }
+    leaves = size;
+    tree = new int[2 * size];
+    dirty = new long[(rows + 63) >>> 6];
+    for (int r = 0; r < rows; r++) {
+      tree[leaves + r] = seatMap.getLongestFreeRun(r);
+    }
+    for (int node = leaves - 1; node > 0; node--) {
+      tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+    }
+  }
+
+  public void markDirty(int row) {
+    dirty[row >>> 6] |= 1L << row;
+    hasDirty = true;
+  }
+
+  /** Returns the longest run of free seats of any row */
+  public int getLongestFreeRun() {
+    refresh();
+    return tree[1];
+  }
+
+  public int getLongestFreeRun(int row) {
+    refresh();
+    return tree[leaves + row];
+  }
+
+  /**
+   * Finds the front-most row at or after fromRow with at least count free seats next to each other
+   *
+   * @return the row, or -1 if there is none
+   */
+  public int findRow(int count, int fromRow) {
+    refresh();
+    if (fromRow >= seatMap.getTotalRows()) {
+      return -1;
+    }
+    return find(1, 0, leaves, fromRow, count);
+  }
+
+  private int find(int node, int low, int high, int fromRow, int count) {
+    if (high <= fromRow || tree[node] < count) {
+      return -1;
+    }
+    if (node >= leaves) {
+      return node - leaves;
+    }
+    int mid = (low + high) >>> 1;
+    int row = find(2 * node, low, mid, fromRow, count);
+    return row >= 0 ? row : find(2 * node + 1, mid, high, fromRow, count);
+  }
+
+  private void refresh() {
+    if (!hasDirty) {
+      return;
+    }
+    for (int i = 0; i < dirty.length; i++) {
+      long bits = dirty[i];
+      while (bits != 0) {
+        int row = (i << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        int node = leaves + row;
+        tree[node] = seatMap.getLongestFreeRun(row);
+        for (node >>>= 1; node > 0; node >>>= 1) {
+          tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+      }
+      dirty[i] = 0;
+    }
+    hasDirty = false;
+  }
+}
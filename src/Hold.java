@@ -0,0 +1,51 @@
+/**
+ * Seats reserved for a phone number until the hold is confirmed into a ticket or expires. The
+ * seats of a hold are occupied in the show's seat map like booked seats, but holds are neither
+ * journaled nor written to snapshots, so they do not survive a restart.
+ */
+class Hold {
+  private final int holdNum;
+  private final int phoneNum;
+  private final int showNum;
+  private final int[] seats;
+  private final long expiresAt;
+  private TimingWheel.Timer<Hold> timer;
+
+  Hold(int holdNum, int phoneNum, int showNum, int[] seats, long expiresAt) {
+    this.holdNum = holdNum;
+    this.phoneNum = phoneNum;
+    this.showNum = showNum;
+    this.seats = seats;
+    this.expiresAt = expiresAt;
+  }
+
+  public int getHoldNum() {
+    return holdNum;
+  }
+
+  public int getPhoneNum() {
+    return phoneNum;
+  }
+
+  public int getShowNum() {
+    return showNum;
+  }
+
+  /** Returns the seat codes of the hold, see Seats */
+  public int[] getSeats() {
+    return seats;
+  }
+
+  /** Returns the epoch millis at which the hold expires */
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  TimingWheel.Timer<Hold> getTimer() {
+    return timer;
+  }
+
+  void setTimer(TimingWheel.Timer<Hold> timer) {
+    this.timer = timer;
+  }
+}
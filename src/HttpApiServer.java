@@ -0,0 +1,513 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP/JSON API for SETUP, VIEW, AVAILABILITY, BOOK and CANCEL on the JDK's built-in HttpServer.
+ * Each request is turned into the command line the console would take and validated by
+ * BookingASystem.checkInput, so the API accepts and rejects exactly what the console does. Errors
+ * are returned as {"error": code, "message": text}, the code being the name of the ERROR_MSG_
+ * constant without its prefix. As HTTP has no MODE command, the admin operations are under
+ * /admin. Request bodies over 64 KB are refused with 413.
+ *
+ * <pre>
+ * POST /admin/shows              {"showNum":100,"rows":10,"seatsPerRow":10,"cancellationWindow":2}
+ * GET  /admin/shows/{show}       the show's tickets, streamed a chunk at a time
+ * GET  /shows/{show}/availability the free seats of each row, streamed row by row
+ * POST /shows/{show}/tickets     {"phoneNum":61234567,"seats":["D3","D4"]} or "seatCount":2
+ * POST /tickets/{ticket}/cancel  {"phoneNum":61234567}
+ * </pre>
+ *
+ * <p>Requests run on a virtual thread each when the runtime has them, otherwise on a fixed pool
+ * large enough for many requests to wait on the journal at once.
+ */
+class HttpApiServer implements AutoCloseable {
+  private static final int HANDLER_THREADS = 256;
+  private static final int STREAM_BUFFER_SIZE = 1 << 14;
+  private static final int MAX_BODY_SIZE = 1 << 16;
+  private static final String BODY_TOO_LARGE = "BODY_TOO_LARGE";
+  private static final String METHOD_NOT_ALLOWED = "METHOD_NOT_ALLOWED";
+
+  private final BookingService service;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  HttpApiServer(BookingService service, InetSocketAddress address) throws IOException {
+    this.service = service;
+    server = HttpServer.create(address, 0);
+    executor = newExecutor();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /** Returns the port the server listens on */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /** Stops accepting requests and waits briefly for the ones in progress */
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdown();
+  }
+
+  /** Runs the request, recording its latency and outcome under the command it stands for */
+  private void handle(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    String[] path = exchange.getRequestURI().getPath().split("/");
+    String command = command(path);
+    String rejection = null;
+    try {
+      if (command == null) {
+        sendError(exchange, 404, "NOT_FOUND", "No such resource");
+      } else {
+        rejection = route(exchange, command, path);
+      }
+    } catch (BodyTooLargeException e) {
+      rejection = BODY_TOO_LARGE;
+      sendError(exchange, 413, rejection, e.getMessage());
+    } catch (IllegalArgumentException e) {
+      rejection = BookingASystem.errorCode(e);
+      sendError(exchange, errorStatus(rejection), rejection, e.getMessage());
+    } catch (Exception e) {
+      rejection = "INTERNAL";
+      sendError(exchange, 500, rejection, e.getMessage());
+    } finally {
+      exchange.close();
+      if (command != null) {
+        service.getStats().record(command, System.nanoTime() - start, rejection);
+      }
+    }
+  }
+
+  /** Returns the console command that the path stands for, or null if there is none */
+  private static String command(String[] path) {
+    // the path starts with a slash, so path[0] is empty
+    if (path.length == 3 && path[1].equals("admin") && path[2].equals("shows")) {
+      return BookingASystem.COMMAND_SETUP;
+    } else if (path.length == 4 && path[1].equals("admin") && path[2].equals("shows")) {
+      return BookingASystem.COMMAND_VIEW;
+    } else if (path.length == 4 && path[1].equals("shows") && path[3].equals("availability")) {
+      return BookingASystem.COMMAND_AVAILABILITY;
+    } else if (path.length == 4 && path[1].equals("shows") && path[3].equals("tickets")) {
+      return BookingASystem.COMMAND_BOOK;
+    } else if (path.length == 4 && path[1].equals("tickets") && path[3].equals("cancel")) {
+      return BookingASystem.COMMAND_CANCEL;
+    }
+    return null;
+  }
+
+  /**
+   * Runs the command the path stands for
+   *
+   * @return null if it succeeded, otherwise the code of the response sent
+   */
+  private String route(HttpExchange exchange, String command, String[] path) throws Exception {
+    String method = exchange.getRequestMethod();
+    switch (command) {
+      case BookingASystem.COMMAND_SETUP:
+        return allow(exchange, method, "POST") ? setup(exchange) : METHOD_NOT_ALLOWED;
+      case BookingASystem.COMMAND_VIEW:
+        return allow(exchange, method, "GET") ? view(exchange, path[3]) : METHOD_NOT_ALLOWED;
+      case BookingASystem.COMMAND_AVAILABILITY:
+        return allow(exchange, method, "GET")
+            ? availability(exchange, path[2])
+            : METHOD_NOT_ALLOWED;
+      case BookingASystem.COMMAND_BOOK:
+        return allow(exchange, method, "POST") ? book(exchange, path[2]) : METHOD_NOT_ALLOWED;
+      default:
+        return allow(exchange, method, "POST") ? cancel(exchange, path[2]) : METHOD_NOT_ALLOWED;
+    }
+  }
+
+  private String setup(HttpExchange exchange) throws Exception {
+    Map<String, Object> body = readObject(exchange);
+    InputParam param =
+        check(
+            true,
+            BookingASystem.COMMAND_SETUP,
+            field(body, "showNum"),
+            field(body, "rows"),
+            field(body, "seatsPerRow"),
+            field(body, "cancellationWindow"));
+    service.setup(
+        param.getShowNum(),
+        param.getTotalRows(),
+        param.getTotalSeats(),
+        param.getCancellationWindow());
+    send(exchange, 201, new TextBuffer().append("{\"showNum\":").append(param.getShowNum()));
+    return null;
+  }
+
+  /**
+   * Streams the show's tickets a chunk at a time in ticket number order, like the console's VIEW,
+   * so the list of a large show is never built whole. Tickets booked meanwhile may show in later
+   * chunks.
+   */
+  private String view(HttpExchange exchange, String showNum) throws Exception {
+    InputParam param = check(true, BookingASystem.COMMAND_VIEW, showNum);
+    Show show = service.getShow(param.getShowNum());
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, 0);
+    OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), STREAM_BUFFER_SIZE);
+    TextBuffer json = new TextBuffer(64 + Show.VIEW_CHUNK * 64);
+    json.append("{\"showNum\":").append(param.getShowNum()).append(",\"tickets\":[");
+    int last = 0;
+    List<Ticket> tickets;
+    while (!(tickets = show.getTicketsAfter(last, Show.VIEW_CHUNK)).isEmpty()) {
+      for (Ticket ticket : tickets) {
+        json.append(last > 0 ? ",{\"ticketNum\":" : "{\"ticketNum\":");
+        json.append(ticket.getTicketNum());
+        json.append(",\"phoneNum\":").append(ticket.getPhoneNum());
+        appendSeats(json.append(",\"seats\":"), ticket.getSeats()).append('}');
+        last = ticket.getTicketNum();
+      }
+      json.writeTo(out);
+      json.reset();
+    }
+    json.append("]}").writeTo(out);
+    out.flush();
+    return null;
+  }
+
+  /**
+   * Streams the free seats row by row without rendering the whole grid first. Each word of seats
+   * is read under the show's monitor, so bookings made meanwhile may show in later rows.
+   */
+  private String availability(HttpExchange exchange, String showNum) throws Exception {
+    InputParam param = check(false, BookingASystem.COMMAND_AVAILABILITY, showNum);
+    Show show = service.getShow(param.getShowNum());
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, 0);
+    OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), STREAM_BUFFER_SIZE);
+    TextBuffer row = new TextBuffer(show.getTotalSeats() * 8);
+    row.append("{\"showNum\":").append(show.getShowNum()).append(",\"rows\":[");
+    for (int r = 0; r < show.getTotalRows(); r++) {
+      if (r > 0) {
+        row.append(',');
+      }
+      row.append('[');
+      boolean first = true;
+      for (int w = 0; w < show.getWordsPerRow(); w++) {
+        long free = ~show.getOccupiedWord(r, w);
+        int end = Math.min(64, show.getTotalSeats() - (w << 6));
+        for (int b = 0; b < end; b++) {
+          if ((free & (1L << b)) != 0) {
+            Seats.appendLabel(row.append(first ? "\"" : ",\""), Seats.code(r, (w << 6) + b));
+            row.append('"');
+            first = false;
+          }
+        }
+      }
+      row.append(']').writeTo(out);
+      row.reset();
+    }
+    row.append("]}").writeTo(out);
+    out.flush();
+    return null;
+  }
+
+  private String book(HttpExchange exchange, String showNum) throws Exception {
+    Map<String, Object> body = readObject(exchange);
+    String seats =
+        body.containsKey("seatCount") ? field(body, "seatCount") : joinSeats(body.get("seats"));
+    InputParam param =
+        check(false, BookingASystem.COMMAND_BOOK, showNum, field(body, "phoneNum"), seats);
+    Ticket ticket;
+    if (param.getSeatCount() > 0) {
+      ticket = service.bookBest(param.getShowNum(), param.getPhoneNum(), param.getSeatCount());
+    } else {
+      ticket = service.book(param.getShowNum(), param.getPhoneNum(), param.getSeats());
+    }
+    TextBuffer json = new TextBuffer();
+    json.append("{\"ticketNum\":").append(ticket.getTicketNum());
+    json.append(",\"showNum\":").append(ticket.getShowNum());
+    send(exchange, 201, appendSeats(json.append(",\"seats\":"), ticket.getSeats()));
+    return null;
+  }
+
+  private String cancel(HttpExchange exchange, String ticketNum) throws Exception {
+    Map<String, Object> body = readObject(exchange);
+    InputParam param =
+        check(false, BookingASystem.COMMAND_CANCEL, ticketNum, field(body, "phoneNum"));
+    long exceededMins = service.cancel(param.getTicketNum(), param.getPhoneNum());
+    if (exceededMins != 0) {
+      TextBuffer json = new TextBuffer();
+      json.append("{\"error\":\"").append(CommandStats.CANCELLATION_WINDOW_EXCEEDED);
+      json.append("\",\"message\":");
+      appendString(json, BookingASystem.MSG_CANCEL_FAILURE + exceededMins);
+      send(exchange, 409, json.append(",\"exceededMinutes\":").append((int) exceededMins));
+      return CommandStats.CANCELLATION_WINDOW_EXCEEDED;
+    }
+    TextBuffer json = new TextBuffer();
+    json.append("{\"ticketNum\":").append(param.getTicketNum()).append(",\"cancelled\":true");
+    send(exchange, 200, json);
+    return null;
+  }
+
+  /**
+   * Validates the operation as the console command made of the given tokens, in admin or buyer
+   * mode
+   */
+  private InputParam check(boolean isAdmin, String... tokens) throws Exception {
+    StringBuilder line = new StringBuilder();
+    for (String token : tokens) {
+      // a token that would split into several would change the command
+      if (token == null || token.isEmpty() || token.chars().anyMatch(Character::isWhitespace)) {
+        throw new IllegalArgumentException(BookingASystem.ERROR_MSG_WRONG_PARAM);
+      }
+      line.append(line.length() > 0 ? " " : "").append(token);
+    }
+    return BookingASystem.checkInput(new CommandTokenizer().reset(line), service, isAdmin);
+  }
+
+  private static boolean allow(HttpExchange exchange, String method, String allowed)
+      throws IOException {
+    if (method.equals(allowed)) {
+      return true;
+    }
+    exchange.getResponseHeaders().set("Allow", allowed);
+    sendError(exchange, 405, METHOD_NOT_ALLOWED, "Use " + allowed);
+    return false;
+  }
+
+  /** Sends the JSON object in the buffer, which is still missing its closing brace */
+  private static void send(HttpExchange exchange, int status, TextBuffer json) throws IOException {
+    json.append('}');
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, json.length());
+    json.writeTo(exchange.getResponseBody());
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String code, String message)
+      throws IOException {
+    TextBuffer json = new TextBuffer();
+    json.append("{\"error\":\"").append(code).append("\",\"message\":");
+    send(exchange, status, appendString(json, message != null ? message : ""));
+  }
+
+  private static int errorStatus(String code) {
+    switch (code) {
+      case "SHOW_NUMBER":
+      case "TICKET_NUMBER":
+      case "HOLD_NUMBER":
+        return 404;
+      case "DUPLICATE_SHOW":
+      case "DUPLICATE_PHONE":
+      case "SEAT":
+      case "NOT_ENOUGH_SEATS":
+        return 409;
+      default:
+        return 400;
+    }
+  }
+
+  private static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // virtual threads need Java 21
+      return Executors.newFixedThreadPool(HANDLER_THREADS);
+    }
+  }
+
+  private static TextBuffer appendSeats(TextBuffer json, int[] seats) {
+    json.append('[');
+    for (int i = 0; i < seats.length; i++) {
+      Seats.appendLabel(json.append(i > 0 ? ",\"" : "\""), seats[i]).append('"');
+    }
+    return json.append(']');
+  }
+
+  private static TextBuffer appendString(TextBuffer json, String text) {
+    json.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20 || c > 0x7E) {
+        String hex = Integer.toHexString(c);
+        json.append("\\u");
+        for (int pad = hex.length(); pad < 4; pad++) {
+          json.append('0');
+        }
+        json.append(hex);
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"');
+  }
+
+  /** Returns a field as the text of its number or string, or null if it is missing */
+  private static String field(Map<String, Object> object, String name) {
+    Object value = object.get(name);
+    return value instanceof String ? (String) value : null;
+  }
+
+  /** Joins an array of seat labels into the comma-separated list the console takes */
+  private static String joinSeats(Object seats) {
+    if (!(seats instanceof List)) {
+      return null;
+    }
+    StringBuilder joined = new StringBuilder();
+    for (Object seat : (List<?>) seats) {
+      if (!(seat instanceof String) || ((String) seat).indexOf(',') >= 0) {
+        return null;
+      }
+      joined.append(joined.length() > 0 ? "," : "").append(seat);
+    }
+    return joined.toString();
+  }
+
+  /**
+   * Reads the request body as a JSON object of numbers, strings and arrays of them. Numbers are
+   * kept as their text, so that they are parsed and reported like console input.
+   *
+   * @exception BodyTooLargeException if the body is longer than MAX_BODY_SIZE
+   */
+  private static Map<String, Object> readObject(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] chunk = new byte[4096];
+    InputStream in = exchange.getRequestBody();
+    for (int n; (n = in.read(chunk)) >= 0; ) {
+      if (bytes.size() + n > MAX_BODY_SIZE) {
+        throw new BodyTooLargeException();
+      }
+      bytes.write(chunk, 0, n);
+    }
+    return new JsonReader(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).readObject();
+  }
+
+  /** Thrown for a request body that is too large to be read */
+  private static final class BodyTooLargeException extends IOException {
+    private BodyTooLargeException() {
+      super("Request body longer than " + MAX_BODY_SIZE + " bytes");
+    }
+  }
+
+  /** Just enough of a JSON parser for the flat request bodies of the API */
+  private static final class JsonReader {
+    private final String text;
+    private int pos;
+
+    private JsonReader(String text) {
+      this.text = text;
+    }
+
+    private Map<String, Object> readObject() {
+      Map<String, Object> object = new HashMap<>();
+      expect('{');
+      if (peek() == '}') {
+        pos++;
+      } else {
+        do {
+          String name = readString();
+          expect(':');
+          object.put(name, readValue());
+        } while (next(',', '}'));
+      }
+      if (peek() != 0) {
+        throw malformed();
+      }
+      return object;
+    }
+
+    private Object readValue() {
+      char c = peek();
+      if (c == '"') {
+        return readString();
+      }
+      if (c == '[') {
+        pos++;
+        List<Object> array = new ArrayList<>();
+        if (peek() == ']') {
+          pos++;
+          return array;
+        }
+        do {
+          array.add(readValue());
+        } while (next(',', ']'));
+        return array;
+      }
+      int start = pos;
+      while (pos < text.length() && "+-.0123456789eE".indexOf(text.charAt(pos)) >= 0) {
+        pos++;
+      }
+      if (start == pos) {
+        throw malformed();
+      }
+      return text.substring(start, pos);
+    }
+
+    private String readString() {
+      expect('"');
+      StringBuilder value = new StringBuilder();
+      while (pos < text.length() && text.charAt(pos) != '"') {
+        char c = text.charAt(pos++);
+        if (c == '\\' && pos < text.length()) {
+          c = text.charAt(pos++);
+          if (c == 'u' && pos + 4 <= text.length()) {
+            c = (char) Integer.parseInt(text.substring(pos, pos + 4), 16);
+            pos += 4;
+          } else if (c == 'n') {
+            c = '\n';
+          } else if (c == 't') {
+            c = '\t';
+          }
+        }
+        value.append(c);
+      }
+      expect('"');
+      return value.toString();
+    }
+
+    /** Consumes either the separator, returning true, or the closing character */
+    private boolean next(char separator, char close) {
+      char c = peek();
+      pos++;
+      if (c == separator) {
+        return true;
+      }
+      if (c == close) {
+        return false;
+      }
+      throw malformed();
+    }
+
+    private void expect(char c) {
+      if (peek() != c) {
+        throw malformed();
+      }
+      pos++;
+    }
+
+    /** Skips whitespace and returns the next character, or 0 at the end */
+    private char peek() {
+      while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+      return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private IllegalArgumentException malformed() {
+      return new IllegalArgumentException("Malformed JSON at offset " + pos);
+    }
+  }
+}
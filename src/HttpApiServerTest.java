@@ -0,0 +1,134 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class HttpApiServerTest {
+  private BookingService service;
+  private HttpApiServer server;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    service = new BookingService();
+    server = new HttpApiServer(service, new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  @Test
+  public void setup_book_view_cancel_success() throws Exception {
+    Assert.assertEquals(
+        "201 {\"showNum\":100}",
+        request(
+            "POST",
+            "/admin/shows",
+            "{\"showNum\": 100, \"rows\": 3, \"seatsPerRow\": 2, \"cancellationWindow\": 2}"));
+    Assert.assertEquals(
+        "201 {\"ticketNum\":1,\"showNum\":100,\"seats\":[\"B1\",\"B2\"]}",
+        request("POST", "/shows/100/tickets", "{\"phoneNum\":61234567,\"seats\":[\"B1\",\"B2\"]}"));
+    Assert.assertEquals(
+        "201 {\"ticketNum\":2,\"showNum\":100,\"seats\":[\"A1\"]}",
+        request("POST", "/shows/100/tickets", "{\"phoneNum\":\"91234567\",\"seatCount\":1}"));
+    Assert.assertEquals(
+        "200 {\"showNum\":100,\"rows\":[[\"A2\"],[],[\"C1\",\"C2\"]]}",
+        request("GET", "/shows/100/availability", null));
+    Assert.assertEquals(
+        "200 {\"showNum\":100,\"tickets\":[{\"ticketNum\":1,\"phoneNum\":61234567,"
+            + "\"seats\":[\"B1\",\"B2\"]},{\"ticketNum\":2,\"phoneNum\":91234567,"
+            + "\"seats\":[\"A1\"]}]}",
+        request("GET", "/admin/shows/100", null));
+    Assert.assertEquals(
+        "200 {\"ticketNum\":1,\"cancelled\":true}",
+        request("POST", "/tickets/1/cancel", "{\"phoneNum\":61234567}"));
+    Assert.assertEquals(5, service.getShow(100).getFreeSeats());
+  }
+
+  @Test
+  public void errors_use_console_messages() throws Exception {
+    service.setup(100, 3, 2, 2);
+    service.book(100, 61234567, new int[] {Seats.parse("A1")});
+    Assert.assertEquals(
+        "409 {\"error\":\"DUPLICATE_PHONE\",\"message\":\""
+            + BookingASystem.ERROR_MSG_DUPLICATE_PHONE
+            + "\"}",
+        request("POST", "/shows/100/tickets", "{\"phoneNum\":61234567,\"seats\":[\"A2\"]}"));
+    Assert.assertEquals(
+        "409 {\"error\":\"SEAT\",\"message\":\"" + BookingASystem.ERROR_MSG_SEAT + "A1\"}",
+        request("POST", "/shows/100/tickets", "{\"phoneNum\":91234567,\"seats\":[\"A1\"]}"));
+    Assert.assertEquals(
+        "404 {\"error\":\"SHOW_NUMBER\",\"message\":\""
+            + BookingASystem.ERROR_MSG_SHOW_NUMBER
+            + "\"}",
+        request("GET", "/shows/200/availability", null));
+    Assert.assertEquals(
+        "400 {\"error\":\"WRONG_PARAM\",\"message\":\""
+            + BookingASystem.ERROR_MSG_WRONG_PARAM
+            + "\"}",
+        request("POST", "/shows/100/tickets", "{\"phoneNum\":\"9123 4567\",\"seats\":[\"A2\"]}"));
+    Assert.assertEquals(
+        "400 {\"error\":\"INVALID_NUMBER\",\"message\":\"For input string: \\\"abc\\\"\"}",
+        request("POST", "/tickets/abc/cancel", "{\"phoneNum\":61234567}"));
+    Assert.assertEquals(
+        "405 {\"error\":\"METHOD_NOT_ALLOWED\",\"message\":\"Use POST\"}",
+        request("GET", "/shows/100/tickets", null));
+  }
+
+  @Test
+  public void view_streams_every_ticket_of_a_large_show() throws Exception {
+    service.setup(100, 26, 40, 2);
+    StringBuilder expected = new StringBuilder("200 {\"showNum\":100,\"tickets\":[");
+    for (int i = 0; i < 3 * Show.VIEW_CHUNK; i++) {
+      int seat = Seats.code(i / 40, i % 40);
+      int ticketNum = service.book(100, 80000000 + i, new int[] {seat}).getTicketNum();
+      expected.append(i > 0 ? "," : "").append("{\"ticketNum\":").append(ticketNum);
+      expected.append(",\"phoneNum\":").append(80000000 + i);
+      expected.append(",\"seats\":[\"").append(Seats.label(seat)).append("\"]}");
+    }
+    Assert.assertEquals(expected.append("]}").toString(), request("GET", "/admin/shows/100", null));
+  }
+
+  @Test
+  public void body_over_limit_refused() throws Exception {
+    service.setup(100, 3, 2, 2);
+    StringBuilder body = new StringBuilder("{\"phoneNum\":61234567,\"seats\":[\"A1\"");
+    while (body.length() < 80_000) {
+      body.append(",\"A2\"");
+    }
+    Assert.assertEquals(
+        "413 {\"error\":\"BODY_TOO_LARGE\",\"message\":\"Request body longer than 65536 bytes\"}",
+        request("POST", "/shows/100/tickets", body.append("]}").toString()));
+    Assert.assertEquals(6, service.getShow(100).getFreeSeats());
+  }
+
+  private String request(String method, String path, String body) throws Exception {
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+    connection.setRequestMethod(method);
+    if (body != null) {
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    int status = connection.getResponseCode();
+    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    for (int n; (n = in.read(chunk)) >= 0; ) {
+      received.write(chunk, 0, n);
+    }
+    in.close();
+    return status + " " + new String(received.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
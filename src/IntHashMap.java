@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map from primitive int keys to non-null values, using linear probing and
+ * backward-shift deletion so that lookups never box the key and removals leave no tombstones
+ */
+class IntHashMap<V> {
+  private static final int MIN_CAPACITY = 8;
+
+  private int[] keys;
+  private Object[] values;
+  private int size;
+  private int mask;
+
+  IntHashMap() {
+    this(MIN_CAPACITY);
+  }
+
+  IntHashMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * 3 < expectedSize * 4) {
+      capacity <<= 1;
+    }
+    keys = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(int key) {
+    return get(key) != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return (V) values[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Associates the value with the key
+   *
+   * @return the previous value for the key, or null if there was none
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    int i = slot(key);
+    for (; values[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        V old = (V) values[i];
+        values[i] = value;
+        return old;
+      }
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * 4 > values.length * 3) {
+      resize(values.length << 1);
+    }
+    return null;
+  }
+
+  /**
+   * Removes the mapping for the key
+   *
+   * @return the removed value, or null if the key was not present
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int i = slot(key);
+    for (; values[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        V old = (V) values[i];
+        shiftBack(i);
+        size--;
+        return old;
+      }
+    }
+    return null;
+  }
+
+  /** Passes every value to the action, in no particular order */
+  @SuppressWarnings("unchecked")
+  public void forEachValue(Consumer<? super V> action) {
+    for (Object value : values) {
+      if (value != null) {
+        action.accept((V) value);
+      }
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+  /** Closes the gap at the given slot by pulling back later entries of the same probe run */
+  private void shiftBack(int gap) {
+    int i = gap;
+    while (true) {
+      i = (i + 1) & mask;
+      if (values[i] == null) {
+        break;
+      }
+      int home = slot(keys[i]);
+      // move the entry back only if its home slot does not lie cyclically in (gap, i]
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+    values[gap] = null;
+  }
+
+  private void resize(int capacity) {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    for (int j = 0; j < oldValues.length; j++) {
+      if (oldValues[j] != null) {
+        int i = slot(oldKeys[j]);
+        while (values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  private int slot(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,43 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntHashMapTest {
+  @Test
+  public void put_get_remove_success() {
+    IntHashMap<String> map = new IntHashMap<>();
+    Assert.assertNull(map.put(61234567, "a"));
+    Assert.assertNull(map.put(91234567, "b"));
+    Assert.assertEquals("a", map.put(61234567, "c"));
+
+    Assert.assertEquals(2, map.size());
+    Assert.assertEquals("c", map.get(61234567));
+    Assert.assertEquals("c", map.remove(61234567));
+    Assert.assertNull(map.get(61234567));
+    Assert.assertNull(map.remove(61234567));
+    Assert.assertEquals("b", map.get(91234567));
+    Assert.assertEquals(1, map.size());
+  }
+
+  @Test
+  public void random_operations_match_hash_map() {
+    IntHashMap<Integer> map = new IntHashMap<>();
+    Map<Integer, Integer> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 200000; i++) {
+      int key = random.nextInt(2000) * 16;
+      if (random.nextInt(3) == 0) {
+        Assert.assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        Assert.assertEquals(expected.put(key, i), map.put(key, i));
+      }
+      Assert.assertEquals(expected.size(), map.size());
+    }
+    for (int key = 0; key < 2000 * 16; key++) {
+      Assert.assertEquals(expected.get(key), map.get(key));
+    }
+  }
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive int keys to non-zero int values, the primitive
+ * counterpart of IntHashMap, so that neither keys nor values are boxed. A value of 0 stands for a
+ * missing key.
+ */
+class IntIntHashMap {
+  private static final int MIN_CAPACITY = 8;
+
+  private int[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+
+  IntIntHashMap() {
+    keys = new int[MIN_CAPACITY];
+    values = new int[MIN_CAPACITY];
+    mask = MIN_CAPACITY - 1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean containsKey(int key) {
+    return get(key) != 0;
+  }
+
+  /** Returns the value for the key, or 0 if there is none */
+  public int get(int key) {
+    for (int i = slot(key); values[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return values[i];
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Associates the value with the key
+   *
+   * @return the previous value for the key, or 0 if there was none
+   */
+  public int put(int key, int value) {
+    if (value == 0) {
+      throw new IllegalArgumentException("Value must not be 0");
+    }
+    int i = slot(key);
+    for (; values[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        int old = values[i];
+        values[i] = value;
+        return old;
+      }
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * 4 > values.length * 3) {
+      resize(values.length << 1);
+    }
+    return 0;
+  }
+
+  /**
+   * Removes the mapping for the key
+   *
+   * @return the removed value, or 0 if the key was not present
+   */
+  public int remove(int key) {
+    int i = slot(key);
+    for (; values[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        int old = values[i];
+        shiftBack(i);
+        size--;
+        return old;
+      }
+    }
+    return 0;
+  }
+
+  public void clear() {
+    Arrays.fill(values, 0);
+    size = 0;
+  }
+
+  /** Closes the gap at the given slot by pulling back later entries of the same probe run */
+  private void shiftBack(int gap) {
+    int i = gap;
+    while (true) {
+      i = (i + 1) & mask;
+      if (values[i] == 0) {
+        break;
+      }
+      int home = slot(keys[i]);
+      // move the entry back only if its home slot does not lie cyclically in (gap, i]
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+    values[gap] = 0;
+  }
+
+  private void resize(int capacity) {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+    for (int j = 0; j < oldValues.length; j++) {
+      if (oldValues[j] != 0) {
+        int i = slot(oldKeys[j]);
+        while (values[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  private int slot(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
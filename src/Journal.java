@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only binary journal of the commands that change booking state (SETUP, BOOK and CANCEL)
+ * and of the ticket number blocks leased by the TicketAllocator (LEASE).
+ *
+ * <p>Appends only copy the record into an in-memory batch and return its sequence number. A single
+ * writer thread writes out everything appended since its last write and fsyncs it once (group
+ * commit), so concurrent commands share one fsync. A command is durable once awaitDurable returns
+ * for its sequence number.
+ *
+ * <p>The file is a 4-byte magic number followed by records, each a type byte and a fixed layout of
+ * big-endian fields: SETUP (show, rows, seats, window), BOOK (ticket, phone, show, epoch millis,
+ * seat count, seat codes), CANCEL (ticket, show) and LEASE (end of the block). A torn record at
+ * the end of the file, left by a crash during a write, is dropped when the journal is opened
+ * again.
+ *
+ * <p>With a snapshot, replay starts at the position the snapshot was taken from and the service
+ * skips the records of each show that the snapshot already contains.
+ */
+class Journal implements AutoCloseable {
+  private static final int MAGIC = 0x424B4A31;
+  private static final int HEADER_SIZE = 4;
+  private static final byte TYPE_SETUP = 1;
+  private static final byte TYPE_BOOK = 2;
+  private static final byte TYPE_CANCEL = 3;
+  private static final byte TYPE_LEASE = 4;
+  private static final int SETUP_SIZE = 1 + 4 * 4;
+  private static final int BOOK_SIZE = 1 + 3 * 4 + 8 + 4;
+  private static final int CANCEL_SIZE = 1 + 2 * 4;
+  private static final int LEASE_SIZE = 1 + 4;
+  private static final int REPLAY_WINDOW_SIZE = 1 << 26;
+
+  private final FileChannel channel;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasPending = lock.newCondition();
+  private final Condition durable = lock.newCondition();
+  private final Thread writer;
+  private volatile Runnable durableListener;
+
+  // guarded by lock
+  private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+  private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+  private long appendedSeq;
+  private long durableSeq;
+  private long syncCount;
+  private long position;
+  private IOException failure;
+  private boolean closed;
+
+  private Journal(FileChannel channel, long position) {
+    this.channel = channel;
+    this.position = position;
+    writer = new Thread(this::writeLoop, "journal-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Opens the journal file, creating it if needed, after replaying the records it already holds
+   * into the service, from the position its snapshot was taken from if it has one
+   *
+   * @exception IOException if the file cannot be read or written, is not a journal or ends before
+   *     the service's snapshot was taken
+   */
+  public static Journal open(Path path, BookingService service) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long end;
+      long start = Math.max(HEADER_SIZE, service.getJournalStart());
+      if (start > Math.max(HEADER_SIZE, channel.size())) {
+        throw new IOException("Journal ends before the snapshot was taken");
+      }
+      if (channel.size() == 0) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC);
+        channel.write(header, 0);
+        channel.force(true);
+        end = HEADER_SIZE;
+      } else {
+        end = replay(channel, service, start);
+        // drop a torn record left by a crash so that new records follow the last complete one
+        channel.truncate(end);
+      }
+      channel.position(end);
+      return new Journal(channel, end);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public long appendSetup(int showNum, int totalRows, int totalSeats, int cancellationWindow) {
+    lock.lock();
+    try {
+      ByteBuffer buffer = reserve(SETUP_SIZE);
+      buffer.put(TYPE_SETUP).putInt(showNum).putInt(totalRows).putInt(totalSeats);
+      buffer.putInt(cancellationWindow);
+      return appended(SETUP_SIZE);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long appendBook(Ticket ticket) {
+    int[] seats = ticket.getSeats();
+    lock.lock();
+    try {
+      ByteBuffer buffer = reserve(BOOK_SIZE + seats.length * 4);
+      buffer.put(TYPE_BOOK).putInt(ticket.getTicketNum()).putInt(ticket.getPhoneNum());
+      buffer.putInt(ticket.getShowNum()).putLong(ticket.getTimestamp().toEpochMilli());
+      buffer.putInt(seats.length);
+      for (int seat : seats) {
+        buffer.putInt(seat);
+      }
+      return appended(BOOK_SIZE + seats.length * 4);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long appendCancel(int ticketNum, int showNum) {
+    lock.lock();
+    try {
+      reserve(CANCEL_SIZE).put(TYPE_CANCEL).putInt(ticketNum).putInt(showNum);
+      return appended(CANCEL_SIZE);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long appendLease(int end) {
+    lock.lock();
+    try {
+      reserve(LEASE_SIZE).put(TYPE_LEASE).putInt(end);
+      return appended(LEASE_SIZE);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the file position at which the next record will be appended */
+  public long position() {
+    lock.lock();
+    try {
+      return position;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the record with the given sequence number has been written and fsynced
+   *
+   * @exception UncheckedIOException if the journal failed before the record became durable
+   */
+  public void awaitDurable(long seq) {
+    lock.lock();
+    try {
+      while (durableSeq < seq && failure == null) {
+        durable.awaitUninterruptibly();
+      }
+      if (durableSeq < seq) {
+        throw new UncheckedIOException("Journal write failed", failure);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns true once the record with the given sequence number has been written and fsynced,
+   * without waiting for it
+   *
+   * @exception UncheckedIOException if the journal failed before the record became durable
+   */
+  public boolean isDurable(long seq) {
+    lock.lock();
+    try {
+      if (durableSeq >= seq) {
+        return true;
+      }
+      if (failure != null) {
+        throw new UncheckedIOException("Journal write failed", failure);
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the listener run by the writer thread after every batch it makes durable and when it
+   * fails, null for none
+   */
+  public void setDurableListener(Runnable listener) {
+    durableListener = listener;
+  }
+
+  /** Returns the number of fsyncs made for appended records so far */
+  public long getSyncCount() {
+    lock.lock();
+    try {
+      return syncCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Writes out any pending records and closes the file */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      closed = true;
+      hasPending.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private ByteBuffer reserve(int size) {
+    if (closed || failure != null) {
+      throw new IllegalStateException("Journal is closed");
+    }
+    if (pending.remaining() < size) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, size * 2));
+      pending.flip();
+      grown.put(pending);
+      pending = grown;
+    }
+    return pending;
+  }
+
+  private long appended(int size) {
+    position += size;
+    appendedSeq++;
+    hasPending.signal();
+    return appendedSeq;
+  }
+
+  private void writeLoop() {
+    while (true) {
+      long batchSeq;
+      lock.lock();
+      try {
+        while (pending.position() == 0 && !closed) {
+          hasPending.awaitUninterruptibly();
+        }
+        if (pending.position() == 0) {
+          return;
+        }
+        ByteBuffer batch = pending;
+        pending = writing;
+        writing = batch;
+        batchSeq = appendedSeq;
+      } finally {
+        lock.unlock();
+      }
+
+      IOException error = null;
+      try {
+        writing.flip();
+        while (writing.hasRemaining()) {
+          channel.write(writing);
+        }
+        channel.force(false);
+      } catch (IOException e) {
+        error = e;
+      }
+      writing.clear();
+
+      lock.lock();
+      try {
+        if (error != null) {
+          failure = error;
+        } else {
+          durableSeq = batchSeq;
+          syncCount++;
+        }
+        durable.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      Runnable listener = durableListener;
+      if (listener != null) {
+        listener.run();
+      }
+      if (error != null) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Replays every complete record of the journal from the start position into the service
+   *
+   * @return the file position after the last complete record
+   */
+  private static long replay(FileChannel channel, BookingService service, long start)
+      throws IOException {
+    long size = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    channel.read(header, 0);
+    if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+      throw new IOException("Not a booking journal");
+    }
+    long position = start;
+    while (position < size) {
+      int length = (int) Math.min(REPLAY_WINDOW_SIZE, size - position);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      int consumed = replayWindow(buffer, service, position);
+      if (position + length == size) {
+        // anything left unconsumed in the last window is a torn record
+        return position + consumed;
+      }
+      if (consumed == 0) {
+        throw new IOException("Corrupt journal record at " + position);
+      }
+      // the next window starts at the record that straddled the end of this one
+      position += consumed;
+    }
+    return position;
+  }
+
+  /**
+   * Replays the complete records at the start of the buffer
+   *
+   * @return the number of bytes consumed
+   */
+  private static int replayWindow(ByteBuffer buffer, BookingService service, long base)
+      throws IOException {
+    int limit = buffer.limit();
+    int position = 0;
+    while (position < limit) {
+      byte type = buffer.get(position);
+      int remaining = limit - position;
+      switch (type) {
+        case TYPE_SETUP:
+          if (remaining < SETUP_SIZE) {
+            return position;
+          }
+          service.restoreShow(
+              base + position,
+              buffer.getInt(position + 1),
+              buffer.getInt(position + 5),
+              buffer.getInt(position + 9),
+              buffer.getInt(position + 13));
+          position += SETUP_SIZE;
+          break;
+
+        case TYPE_BOOK:
+          if (remaining < BOOK_SIZE) {
+            return position;
+          }
+          int seatCount = buffer.getInt(position + 21);
+          if (seatCount < 0 || seatCount > (remaining - BOOK_SIZE) / 4) {
+            return position;
+          }
+          int[] seats = new int[seatCount];
+          for (int i = 0; i < seatCount; i++) {
+            seats[i] = buffer.getInt(position + BOOK_SIZE + i * 4);
+          }
+          service.restoreTicket(
+              base + position,
+              buffer.getInt(position + 1),
+              buffer.getInt(position + 5),
+              buffer.getInt(position + 9),
+              seats,
+              buffer.getLong(position + 13));
+          position += BOOK_SIZE + seatCount * 4;
+          break;
+
+        case TYPE_CANCEL:
+          if (remaining < CANCEL_SIZE) {
+            return position;
+          }
+          service.restoreCancel(
+              base + position, buffer.getInt(position + 1), buffer.getInt(position + 5));
+          position += CANCEL_SIZE;
+          break;
+
+        case TYPE_LEASE:
+          if (remaining < LEASE_SIZE) {
+            return position;
+          }
+          service.restoreLease(buffer.getInt(position + 1));
+          position += LEASE_SIZE;
+          break;
+
+        default:
+          if (type == 0 && isZero(buffer, position)) {
+            // zero-filled tail of a write that did not complete
+            return position;
+          }
+          throw new IOException("Corrupt journal record at " + (base + position));
+      }
+    }
+    return position;
+  }
+
+  private static boolean isZero(ByteBuffer buffer, int from) {
+    for (int i = from; i < buffer.limit(); i++) {
+      if (buffer.get(i) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
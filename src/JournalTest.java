@@ -0,0 +1,228 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class JournalTest {
+  private Path journalFile;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    journalFile = Files.createTempFile("journal", ".bin");
+    Files.delete(journalFile);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(journalFile);
+  }
+
+  @Test
+  public void replay_restores_shows_tickets_and_ticket_count() throws Exception {
+    BookingService service = new BookingService();
+    try (Journal journal = Journal.open(journalFile, service)) {
+      service.setJournal(journal);
+      service.setup(100, 10, 10, 2);
+      service.setup(200, 5, 5, 30);
+      service.book(100, 61234567, new int[] {Seats.parse("D3"), Seats.parse("D4")});
+      service.book(200, 91234567, new int[] {Seats.parse("A1")});
+      service.book(100, 81234567, new int[] {Seats.parse("J10")});
+      Assert.assertEquals(0, service.cancel(2, 91234567));
+    }
+
+    BookingService restored = new BookingService();
+    try (Journal journal = Journal.open(journalFile, restored)) {
+      restored.setJournal(journal);
+      Assert.assertEquals(service.getShow(100).toString(), restored.getShow(100).toString());
+      Assert.assertEquals(97, restored.getShow(100).getFreeSeats());
+      Assert.assertEquals(25, restored.getShow(200).getFreeSeats());
+      Assert.assertEquals(30, restored.getShow(200).getCancellationWindow());
+      Assert.assertNull(restored.getTicket(2));
+      Assert.assertEquals(
+          service.getTicket(1).getTimestamp().toEpochMilli(),
+          restored.getTicket(1).getTimestamp().toEpochMilli());
+
+      // numbering resumes after the block leased before the restart
+      Assert.assertEquals(
+          TicketAllocator.BLOCK_SIZE, restored.book(200, 91234567, new int[] {0}).getTicketNum());
+    }
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void open_drops_torn_record() throws Exception {
+    BookingService service = new BookingService();
+    try (Journal journal = Journal.open(journalFile, service)) {
+      service.setJournal(journal);
+      service.setup(100, 10, 10, 2);
+      service.book(100, 61234567, new int[] {Seats.parse("A1")});
+    }
+    long size = Files.size(journalFile);
+    try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.APPEND)) {
+      // the start of a BOOK record whose write did not complete
+      channel.write(ByteBuffer.wrap(new byte[] {2, 0, 0, 0, 2, 3}));
+    }
+
+    BookingService restored = new BookingService();
+    try (Journal journal = Journal.open(journalFile, restored)) {
+      restored.setJournal(journal);
+      Assert.assertEquals(size, Files.size(journalFile));
+      Assert.assertEquals(
+          TicketAllocator.BLOCK_SIZE, restored.book(100, 91234567, new int[] {1}).getTicketNum());
+    }
+
+    BookingService again = new BookingService();
+    try (Journal ignored = Journal.open(journalFile, again)) {
+      Assert.assertEquals(98, again.getShow(100).getFreeSeats());
+    }
+  }
+
+  @Test
+  public void lease_recorded_once_per_block_and_survives_restart() throws Exception {
+    BookingService service = new BookingService();
+    service.setShards(2);
+    try (Journal journal = Journal.open(journalFile, service)) {
+      service.setJournal(journal);
+      service.setup(100, 10, 10, 2);
+      service.setup(101, 10, 10, 2);
+      for (int i = 0; i < 3; i++) {
+        service.book(100, 61234560 + i, new int[] {Seats.code(0, i)});
+        service.book(101, 61234560 + i, new int[] {Seats.code(0, i)});
+      }
+    }
+    // header, two SETUP, six single-seat BOOK and one LEASE per shard
+    Assert.assertEquals(4 + 2 * 17 + 6 * 29 + 2 * 5, Files.size(journalFile));
+
+    BookingService restored = new BookingService();
+    try (Journal journal = Journal.open(journalFile, restored)) {
+      restored.setJournal(journal);
+      Assert.assertEquals(3, restored.getShow(101).getTickets().size());
+      // the shards leased the chunks of 1 and 4096, numbering resumes after the second one
+      Assert.assertEquals(
+          2 * TicketAllocator.BLOCK_SIZE,
+          restored.book(100, 91234567, new int[] {Seats.code(1, 0)}).getTicketNum());
+    }
+  }
+
+  @Test
+  public void open_failure_not_a_journal() throws Exception {
+    Files.write(journalFile, "SETUP 1 1 1 1".getBytes(StandardCharsets.US_ASCII));
+    try {
+      Journal.open(journalFile, new BookingService()).close();
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("Not a booking journal", e.getMessage());
+    }
+  }
+
+  @Test
+  public void changes_are_taken_back_once_the_journal_is_closed() throws Exception {
+    BookingService service = new BookingService();
+    Journal journal = Journal.open(journalFile, service);
+    service.setJournal(journal);
+    service.setup(100, 1, 10, 60);
+    Ticket ticket = service.book(100, 61234567, new int[] {Seats.parse("A1")});
+    Hold hold = service.hold(100, 81234567, new int[] {Seats.parse("A10")});
+    journal.close();
+
+    BookingBatch batch = new BookingBatch(100);
+    batch.add(91234568, new int[] {Seats.parse("A4")});
+    batch.addBest(91234569, 2);
+    Runnable[] changes = {
+      () -> service.book(100, 91234567, new int[] {Seats.parse("A2"), Seats.parse("A3")}),
+      () -> service.bookBest(100, 91234567, 4),
+      () -> service.bookBatch(batch),
+      () -> service.confirm(hold.getHoldNum(), 81234567),
+      () -> service.cancel(ticket.getTicketNum(), 61234567)
+    };
+    for (Runnable change : changes) {
+      try {
+        change.run();
+        Assert.fail();
+      } catch (IllegalStateException e) {
+        Assert.assertEquals("Journal is closed", e.getMessage());
+      }
+    }
+
+    // only the booking made before the close is left
+    Assert.assertEquals(9, service.getShow(100).getFreeSeats());
+    Assert.assertEquals(1, service.countShowsWithFreeRun(9));
+    Assert.assertEquals(ticket, service.getTicketsOfPhone(61234567).get(0));
+    Assert.assertEquals(1, service.getShow(100).getTickets().size());
+    Assert.assertTrue(service.getTicketsOfPhone(91234567).isEmpty());
+    Assert.assertTrue(service.getTicketsOfPhone(81234567).isEmpty());
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void concurrent_bookings_are_all_durable() throws Exception {
+    BookingService service = new BookingService();
+    try (Journal journal = Journal.open(journalFile, service)) {
+      service.setJournal(journal);
+      for (int show = 1; show <= 4; show++) {
+        service.setup(show, 26, 10, 60);
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(16);
+      for (int i = 0; i < 1000; i++) {
+        final int show = i % 4 + 1;
+        final int seat = i / 4;
+        executor.execute(
+            () ->
+                service.book(show, 80000000 + seat, new int[] {Seats.code(seat / 10, seat % 10)}));
+      }
+      executor.shutdown();
+      Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    }
+
+    BookingService restored = new BookingService();
+    try (Journal ignored = Journal.open(journalFile, restored)) {
+      for (int show = 1; show <= 4; show++) {
+        Assert.assertEquals(10, restored.getShow(show).getFreeSeats());
+        Assert.assertEquals(
+            service.getShow(show).toString(), restored.getShow(show).toString());
+      }
+      Assert.assertNotNull(restored.getTicket(1000));
+    }
+  }
+
+  @Test
+  public void main_with_journal_continues_after_restart() throws Exception {
+    Path commandFile = Files.createTempFile("commands", ".txt");
+    Path outputFile = Files.createTempFile("output", ".txt");
+    try {
+      String commands = "SETUP 100 10 10 2\nMODE BUYER\nBOOK 100 61234567 D3,D4\n";
+      Files.write(commandFile, commands.getBytes());
+      BookingASystem.main(
+          new String[] {
+            BookingASystem.OPTION_JOURNAL, journalFile.toString(),
+            commandFile.toString(), outputFile.toString()
+          });
+
+      commands = "MODE BUYER\nBOOK 100 91234567 D4,D5\nCANCEL 1 61234567\n";
+      Files.write(commandFile, commands.getBytes());
+      BookingASystem.main(
+          new String[] {
+            BookingASystem.OPTION_JOURNAL, journalFile.toString(),
+            commandFile.toString(), outputFile.toString()
+          });
+
+      String output = new String(Files.readAllBytes(outputFile), StandardCharsets.US_ASCII);
+      Assert.assertTrue(output.contains(BookingASystem.ERROR_MSG_SEAT + "D4"));
+      Assert.assertTrue(output.endsWith(BookingASystem.MSG_CANCEL_SUCCESS + "1\n"));
+    } finally {
+      Files.delete(commandFile);
+      Files.delete(outputFile);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with log-linear buckets: every power of two is
+ * split into 16 buckets, so a percentile is reported within about 6% of the true value. Recording
+ * is one atomic increment plus an atomic update of the maximum when it grows, so any number of
+ * threads can record without contending on a lock. Reads are not atomic with respect to
+ * recording, which is fine for monitoring.
+ */
+class LatencyHistogram {
+  private static final int SUB_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // non-negative longs have their highest bit at position 62 or below
+  private static final int BUCKETS = (62 - SUB_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(index(nanos));
+    long current = max.get();
+    while (nanos > current && !max.compareAndSet(current, nanos)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the duration that the given fraction of the recorded durations do not exceed, rounded
+   * up to the end of its bucket
+   *
+   * @return the duration in nanoseconds, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double fraction) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(lowestValue(i + 1) - 1, max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /** Returns the p50, p99, p999 and max in microseconds as one line of text */
+  public String formatPercentiles() {
+    return String.format(
+        Locale.ROOT,
+        "p50=%.1f, p99=%.1f, p999=%.1f, max=%.1f",
+        getPercentile(0.5) / 1000.0,
+        getPercentile(0.99) / 1000.0,
+        getPercentile(0.999) / 1000.0,
+        getMax() / 1000.0);
+  }
+
+  /** Values below 16 have a bucket each, larger ones share a bucket with 1/16 of their octave */
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS
+        + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+  }
+
+  /** Returns the smallest value that falls into the bucket */
+  static long lowestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    if (index >= BUCKETS) {
+      return Long.MAX_VALUE;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+    return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+  }
+}
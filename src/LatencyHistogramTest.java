@@ -0,0 +1,39 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest {
+  @Test
+  public void buckets_cover_every_value_in_order() {
+    for (long value = 0; value < 1 << 16; value++) {
+      int index = LatencyHistogram.index(value);
+      Assert.assertTrue(LatencyHistogram.lowestValue(index) <= value);
+      Assert.assertTrue(LatencyHistogram.lowestValue(index + 1) > value);
+    }
+    Assert.assertEquals(
+        Long.MAX_VALUE, LatencyHistogram.lowestValue(LatencyHistogram.index(Long.MAX_VALUE) + 1));
+  }
+
+  @Test
+  public void percentiles_within_bucket_precision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(42);
+    long[] values = new long[100_000];
+    for (int i = 0; i < values.length; i++) {
+      // mostly microseconds with a long tail
+      values[i] = (long) (1000 * Math.exp(random.nextGaussian() * 1.5));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    Assert.assertEquals(values.length, histogram.getCount());
+    Assert.assertEquals(values[values.length - 1], histogram.getMax());
+    for (double fraction : new double[] {0.5, 0.99, 0.999}) {
+      long expected = values[(int) Math.ceil(fraction * values.length) - 1];
+      long actual = histogram.getPercentile(fraction);
+      Assert.assertTrue(fraction + ": " + actual, actual >= expected);
+      Assert.assertTrue(fraction + ": " + actual, actual <= expected + expected / 16 + 1);
+    }
+  }
+}
@@ -0,0 +1,367 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic ticket-release rush against an in-process BookingService, driven through
+ * CommandSession so that commands take the same parsing, validation and booking path as the
+ * console. An admin sets up every show in a burst, then buyer threads run a mix of BOOK commands
+ * for seats near the front of shows picked with a Zipf skew, so that hot shows sell out and
+ * buyers fight over the same seats, BOOK by number of seats, retries with a phone number that has
+ * already booked, and CANCEL of earlier tickets, some with the wrong phone number.
+ *
+ * <p>The load is open-loop: every thread has a fixed schedule at the target rate and latency is
+ * measured from the time a command was due rather than when it was sent, so a stall shows up in
+ * the percentiles instead of quietly lowering the rate. The service runs on a clock that goes
+ * faster than real time, so that cancellations fall both inside and outside the window of a few
+ * minutes within a short run.
+ *
+ * <p>The report gives the achieved throughput, the latency percentiles of each command and the
+ * reject mix per ERROR_MSG_ code from CommandStats. With --write, the commands are run on one
+ * thread and also written to a command file, which replays the same stream in batch mode.
+ */
+final class LoadGenerator {
+  // percentage of commands of each kind, the rest are CANCEL
+  private static final int BOOK_SEATS_PERCENT = 65;
+  private static final int BOOK_COUNT_PERCENT = 10;
+  private static final int RETRY_PERCENT = 10;
+  // percentage of cancellations sent with the wrong phone number
+  private static final int WRONG_PHONE_PERCENT = 20;
+  private static final int MAX_GROUP = 4;
+
+  private final Options options;
+  private final BookingService service;
+  private final double[] showWeights;
+  private final Map<String, LatencyHistogram> latency = new LinkedHashMap<>();
+  private final LongAdder completed = new LongAdder();
+
+  /** Workload settings, each with a command line option of the same name */
+  static final class Options {
+    int shows = 50;
+    int rows = 26;
+    int seats = 50;
+    int threads = 4;
+    // 0 to run commands on the buyer threads
+    int shards;
+    double rate = 10_000;
+    double duration = 10;
+    double skew = 1.0;
+    long timeScale = 60;
+    long seed = 42;
+    String write;
+  }
+
+  LoadGenerator(Options options) {
+    this.options = options;
+    long start = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
+    // the service's clock runs timeScale times faster than real time
+    Clock clock =
+        new Clock() {
+          @Override
+          public ZoneId getZone() {
+            return ZoneOffset.UTC;
+          }
+
+          @Override
+          public Clock withZone(ZoneId zone) {
+            return this;
+          }
+
+          @Override
+          public long millis() {
+            return start + (System.nanoTime() - startNanos) / 1_000_000 * options.timeScale;
+          }
+
+          @Override
+          public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+          }
+        };
+    service = new BookingService(clock);
+    if (options.shards > 0) {
+      service.setShards(options.shards);
+    }
+    showWeights = new double[options.shows];
+    double total = 0;
+    for (int i = 0; i < options.shows; i++) {
+      total += 1 / Math.pow(i + 1, options.skew);
+      showWeights[i] = total;
+    }
+    for (int i = 0; i < options.shows; i++) {
+      showWeights[i] /= total;
+    }
+    for (String command : BookingASystem.COMMANDS) {
+      latency.put(command, new LatencyHistogram());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--shows":
+          options.shows = Integer.parseInt(value);
+          break;
+        case "--rows":
+          options.rows = Integer.parseInt(value);
+          break;
+        case "--seats":
+          options.seats = Integer.parseInt(value);
+          break;
+        case "--threads":
+          options.threads = Integer.parseInt(value);
+          break;
+        case "--shards":
+          options.shards = Integer.parseInt(value);
+          break;
+        case "--rate":
+          options.rate = Double.parseDouble(value);
+          break;
+        case "--duration":
+          options.duration = Double.parseDouble(value);
+          break;
+        case "--skew":
+          options.skew = Double.parseDouble(value);
+          break;
+        case "--time-scale":
+          options.timeScale = Long.parseLong(value);
+          break;
+        case "--seed":
+          options.seed = Long.parseLong(value);
+          break;
+        case "--write":
+          options.write = value;
+          options.threads = 1;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+    new LoadGenerator(options).run(System.out);
+  }
+
+  public BookingService getService() {
+    return service;
+  }
+
+  /** Returns the number of commands run so far, the setup burst included */
+  public long getCompleted() {
+    return completed.sum();
+  }
+
+  /** Runs the setup burst and then the buyers, and prints the report to out */
+  public void run(PrintStream out) throws Exception {
+    Writer script =
+        options.write != null
+            ? Files.newBufferedWriter(Paths.get(options.write), StandardCharsets.US_ASCII)
+            : null;
+    try {
+      Buyer admin = new Buyer(-1, script);
+      for (int show = 1; show <= options.shows; show++) {
+        // windows of one to five minutes
+        admin.run(
+            "SETUP " + show + " " + options.rows + " " + options.seats + " " + (1 + show % 5),
+            System.nanoTime());
+      }
+
+      List<Thread> threads = new ArrayList<>();
+      long intervalNanos = (long) (1e9 * options.threads / options.rate);
+      long start = System.nanoTime();
+      long end = start + (long) (options.duration * 1e9);
+      for (int t = 0; t < options.threads; t++) {
+        Buyer buyer = t == 0 ? admin : new Buyer(t, script);
+        buyer.run("MODE BUYER", System.nanoTime());
+        // threads are spread over the interval so that the total rate is even
+        long first = start + intervalNanos * t / options.threads;
+        Thread thread =
+            new Thread(() -> buyer.runSchedule(first, intervalNanos, end), "buyer-" + t);
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      long elapsed = System.nanoTime() - start;
+      printReport(out, elapsed);
+    } finally {
+      if (script != null) {
+        script.close();
+      }
+    }
+  }
+
+  private void printReport(PrintStream out, long elapsedNanos) {
+    long buyerCommands = 0;
+    for (LatencyHistogram histogram : latency.values()) {
+      buyerCommands += histogram.getCount();
+    }
+    buyerCommands -= latency.get(BookingASystem.COMMAND_SETUP).getCount();
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "-- Load: %d threads, %d shards, target %.0f commands/s for %.1f s, %d shows of %d x %d"
+                + " seats",
+            options.threads,
+            options.shards,
+            options.rate,
+            options.duration,
+            options.shows,
+            options.rows,
+            options.seats));
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "-- Achieved %.0f commands/s, %d buyer commands",
+            buyerCommands / (elapsedNanos / 1e9),
+            buyerCommands));
+    out.println("-- Latency from the scheduled time, in microseconds:");
+    for (Map.Entry<String, LatencyHistogram> entry : latency.entrySet()) {
+      if (entry.getValue().getCount() > 0) {
+        out.println(
+            entry.getKey()
+                + ": count="
+                + entry.getValue().getCount()
+                + ", "
+                + entry.getValue().formatPercentiles());
+      }
+    }
+    // the service's own view, with the rejections per error code
+    service.getStats().print(out);
+  }
+
+  /** Picks a show number, show 1 being the most popular */
+  private int pickShow(Random random) {
+    double r = random.nextDouble();
+    int low = 0;
+    int high = showWeights.length - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (showWeights[mid] < r) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low + 1;
+  }
+
+  /** One buyer terminal: a session of its own with the tickets it has booked */
+  private final class Buyer {
+    private final Random random;
+    private final CommandSession session = new CommandSession(service);
+    private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(response, false);
+    private final Writer script;
+    private final int phoneBase;
+    private int phoneCount;
+    // ticket number, phone number and show number of each ticket booked
+    private final List<int[]> tickets = new ArrayList<>();
+    // phone number and show number of each booking attempt
+    private final List<int[]> attempts = new ArrayList<>();
+
+    private Buyer(int id, Writer script) {
+      this.random = new Random(options.seed + id);
+      this.script = script;
+      this.phoneBase = (id + 1) * 1_000_000;
+    }
+
+    private void runSchedule(long first, long intervalNanos, long end) {
+      for (long due = first; due < end; due += intervalNanos) {
+        long now;
+        while ((now = System.nanoTime()) < due) {
+          LockSupport.parkNanos(due - now);
+        }
+        run(nextCommand(), due);
+      }
+    }
+
+    private String nextCommand() {
+      int dice = random.nextInt(100);
+      if (dice < BOOK_SEATS_PERCENT || attempts.isEmpty()) {
+        return book(pickShow(random), nextPhone(), seats());
+      }
+      dice -= BOOK_SEATS_PERCENT;
+      if (dice < BOOK_COUNT_PERCENT) {
+        return book(pickShow(random), nextPhone(), String.valueOf(1 + random.nextInt(MAX_GROUP)));
+      }
+      dice -= BOOK_COUNT_PERCENT;
+      // nothing to cancel yet, so retry instead
+      if (dice < RETRY_PERCENT || tickets.isEmpty()) {
+        int[] attempt = attempts.get(random.nextInt(attempts.size()));
+        return book(attempt[1], attempt[0], seats());
+      }
+      int[] ticket = tickets.remove(random.nextInt(tickets.size()));
+      int phone = random.nextInt(100) < WRONG_PHONE_PERCENT ? ticket[1] ^ 1 : ticket[1];
+      return "CANCEL " + ticket[0] + " " + phone;
+    }
+
+    private String book(int show, int phone, String seats) {
+      attempts.add(new int[] {phone, show});
+      if (attempts.size() > 10_000) {
+        attempts.remove(0);
+      }
+      return "BOOK " + show + " " + phone + " " + seats;
+    }
+
+    private int nextPhone() {
+      return 60_000_000 + (phoneBase + phoneCount++) % 10_000_000;
+    }
+
+    /** Adjacent seats in a row near the front, the closer to the front the more likely */
+    private String seats() {
+      int row = Math.min(random.nextInt(options.rows), random.nextInt(options.rows));
+      int count = 1 + random.nextInt(Math.min(MAX_GROUP, options.seats));
+      int col = random.nextInt(options.seats - count + 1);
+      StringBuilder labels = new StringBuilder();
+      for (int i = 0; i < count; i++) {
+        labels.append(i > 0 ? "," : "").append(Seats.label(Seats.code(row, col + i)));
+      }
+      return labels.toString();
+    }
+
+    /** Runs the command, recording its latency from the time it was due */
+    private void run(String command, long due) {
+      response.reset();
+      session.execute(command, out);
+      long done = System.nanoTime();
+      out.flush();
+      String name = command.substring(0, command.indexOf(' '));
+      latency.get(name).record(done - due);
+      completed.increment();
+      if (name.equals(BookingASystem.COMMAND_BOOK)) {
+        String text = new String(response.toByteArray(), StandardCharsets.US_ASCII);
+        if (text.startsWith(BookingASystem.MSG_BOOK)) {
+          String ticketNum = text.substring(BookingASystem.MSG_BOOK.length()).trim();
+          int[] attempt = attempts.get(attempts.size() - 1);
+          tickets.add(new int[] {Integer.parseInt(ticketNum), attempt[0], attempt[1]});
+        }
+      }
+      if (script != null) {
+        try {
+          script.write(command);
+          script.write('\n');
+        } catch (IOException e) {
+          throw new IllegalStateException("Failed to write command file", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class LoadGeneratorTest {
+  @Test
+  public void short_run_reports_rejections_and_writes_commands() throws Exception {
+    Path script = Files.createTempFile("load", ".txt");
+    try {
+      LoadGenerator.Options options = new LoadGenerator.Options();
+      options.shows = 5;
+      options.rows = 4;
+      options.seats = 8;
+      options.threads = 1;
+      options.rate = 2000;
+      options.duration = 0.5;
+      options.timeScale = 1000;
+      options.write = script.toString();
+      LoadGenerator generator = new LoadGenerator(options);
+      ByteArrayOutputStream captured = new ByteArrayOutputStream();
+      generator.run(new PrintStream(captured, true));
+
+      CommandStats stats = generator.getService().getStats();
+      Assert.assertEquals(5, stats.getSucceeded(BookingASystem.COMMAND_SETUP));
+      Assert.assertTrue(stats.getSucceeded(BookingASystem.COMMAND_BOOK) > 0);
+      Assert.assertTrue(stats.getRejected(BookingASystem.COMMAND_BOOK, "DUPLICATE_PHONE") > 0);
+      Assert.assertTrue(stats.getRejected(BookingASystem.COMMAND_BOOK, "SEAT") > 0);
+      Assert.assertTrue(
+          stats.getRejected(
+                  BookingASystem.COMMAND_CANCEL, CommandStats.CANCELLATION_WINDOW_EXCEEDED)
+              > 0);
+
+      List<String> lines = Files.readAllLines(script, StandardCharsets.US_ASCII);
+      Assert.assertEquals(generator.getCompleted(), lines.size());
+      Assert.assertEquals("SETUP 1 4 8 2", lines.get(0));
+      Assert.assertEquals("MODE BUYER", lines.get(5));
+      String report = new String(captured.toByteArray(), StandardCharsets.US_ASCII);
+      Assert.assertTrue(report.contains("-- Achieved "));
+      Assert.assertTrue(report.contains("rejected DUPLICATE_PHONE="));
+    } finally {
+      Files.delete(script);
+    }
+  }
+}
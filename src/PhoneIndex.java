@@ -0,0 +1,87 @@
+import java.util.Arrays;
+
+/**
+ * Secondary index from phone number to the numbers of its live tickets across all shows, so that
+ * a buyer's tickets are found in time proportional to how many they have rather than by scanning
+ * every show. Phone numbers are spread over stripes, each an IntHashMap guarded by its own
+ * monitor, so shows on different shards index tickets for different phones without contending.
+ *
+ * <p>The tickets of a phone are kept in an int array, its count in the first element and the
+ * ticket numbers after it in ascending order.
+ */
+class PhoneIndex {
+  private static final int STRIPE_BITS = 6;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final IntHashMap<int[]>[] stripes = new IntHashMap[1 << STRIPE_BITS];
+
+  PhoneIndex() {
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new IntHashMap<>();
+    }
+  }
+
+  /** Adds the ticket to the phone number, unless it is already there */
+  public void add(int phoneNum, int ticketNum) {
+    IntHashMap<int[]> stripe = stripe(phoneNum);
+    synchronized (stripe) {
+      int[] tickets = stripe.get(phoneNum);
+      if (tickets == null) {
+        stripe.put(phoneNum, new int[] {1, ticketNum});
+        return;
+      }
+      int count = tickets[0];
+      // numbers are issued in ascending order, so this is almost always an append
+      int i = count + 1;
+      while (i > 1 && tickets[i - 1] > ticketNum) {
+        i--;
+      }
+      if (i > 1 && tickets[i - 1] == ticketNum) {
+        return;
+      }
+      if (count + 1 == tickets.length) {
+        tickets = Arrays.copyOf(tickets, tickets.length * 2);
+        stripe.put(phoneNum, tickets);
+      }
+      System.arraycopy(tickets, i, tickets, i + 1, count + 1 - i);
+      tickets[i] = ticketNum;
+      tickets[0] = count + 1;
+    }
+  }
+
+  /** Removes the ticket from the phone number, dropping the phone number with its last ticket */
+  public void remove(int phoneNum, int ticketNum) {
+    IntHashMap<int[]> stripe = stripe(phoneNum);
+    synchronized (stripe) {
+      int[] tickets = stripe.get(phoneNum);
+      if (tickets == null) {
+        return;
+      }
+      int count = tickets[0];
+      for (int i = 1; i <= count; i++) {
+        if (tickets[i] == ticketNum) {
+          if (count == 1) {
+            stripe.remove(phoneNum);
+          } else {
+            System.arraycopy(tickets, i + 1, tickets, i, count - i);
+            tickets[0] = count - 1;
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  /** Returns the numbers of the live tickets of the phone number in ascending order */
+  public int[] get(int phoneNum) {
+    IntHashMap<int[]> stripe = stripe(phoneNum);
+    synchronized (stripe) {
+      int[] tickets = stripe.get(phoneNum);
+      return tickets == null ? new int[0] : Arrays.copyOfRange(tickets, 1, tickets[0] + 1);
+    }
+  }
+
+  private IntHashMap<int[]> stripe(int phoneNum) {
+    return stripes[(phoneNum * 0x9E3779B9) >>> (32 - STRIPE_BITS)];
+  }
+}
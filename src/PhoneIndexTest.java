@@ -0,0 +1,36 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class PhoneIndexTest {
+  @Test
+  public void add_remove_keep_tickets_in_order() {
+    PhoneIndex index = new PhoneIndex();
+    for (int ticketNum = 1; ticketNum <= 5; ticketNum++) {
+      index.add(61234567, ticketNum * 2);
+    }
+    index.add(61234567, 3);
+    index.add(61234567, 4);
+    index.add(91234567, 1);
+    index.remove(61234567, 8);
+    index.remove(61234567, 7);
+
+    Assert.assertArrayEquals(new int[] {2, 3, 4, 6, 10}, index.get(61234567));
+    Assert.assertArrayEquals(new int[] {1}, index.get(91234567));
+
+    index.remove(91234567, 1);
+    Assert.assertArrayEquals(new int[0], index.get(91234567));
+    Assert.assertArrayEquals(new int[0], index.get(81234567));
+  }
+
+  @Test
+  public void ticket_table_indexes_live_tickets_by_phone() {
+    TicketTable table = new TicketTable();
+    table.put(1, 61234567, 100, new int[] {0}, 0);
+    table.put(2, 91234567, 100, new int[] {1}, 0);
+    table.put(5000, 61234567, 200, new int[] {0, 1}, 0);
+    table.remove(1);
+
+    Assert.assertArrayEquals(new int[] {5000}, table.getTicketNums(61234567));
+    Assert.assertArrayEquals(new int[] {2}, table.getTicketNums(91234567));
+  }
+}
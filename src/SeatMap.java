@@ -0,0 +1,266 @@
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Seat occupancy of a show packed into a flat bitset of longs. Each row starts on its own word so
+ * that a row of up to 64 seats is a single word and row-level queries never straddle rows. The
+ * number of occupied seats of every row and of the whole show is kept up to date as seats change,
+ * so free seat counts are read without counting bits.
+ *
+ * <p>The bits and row counts are in arrays on the heap, or with a SeatRegion, at the show's offset
+ * in the region's direct memory.
+ */
+class SeatMap {
+  // the most adjacent rows a block of seats booked by count is spread over
+  static final int MAX_BLOCK_ROWS = 8;
+
+  private final int totalRows;
+  private final int totalSeats;
+  private final int wordsPerRow;
+  private final LongBuffer words;
+  private final IntBuffer rowOccupied;
+  private int occupiedCount;
+  // built by the first search for a block of seats, then kept up to date
+  private FreeRunIndex runIndex;
+
+  SeatMap(int totalRows, int totalSeats) {
+    this(totalRows, totalSeats, null);
+  }
+
+  /** Keeps the seats in the region, or on the heap if there is no region or it is full */
+  SeatMap(int totalRows, int totalSeats, SeatRegion region) {
+    this.totalRows = totalRows;
+    this.totalSeats = totalSeats;
+    this.wordsPerRow = (totalSeats + 63) >>> 6;
+    int wordCount = totalRows * wordsPerRow;
+    ByteBuffer bytes = region != null ? region.allocate(wordCount * 8 + totalRows * 4) : null;
+    if (bytes != null) {
+      this.words = bytes.asLongBuffer();
+      ((Buffer) bytes).position(wordCount * 8);
+      this.rowOccupied = bytes.slice().order(bytes.order()).asIntBuffer();
+    } else {
+      this.words = LongBuffer.wrap(new long[wordCount]);
+      this.rowOccupied = IntBuffer.wrap(new int[totalRows]);
+    }
+  }
+
+  /** Returns true if the seats are kept in a SeatRegion */
+  public boolean isOffHeap() {
+    return words.isDirect();
+  }
+
+  public int getTotalRows() {
+    return totalRows;
+  }
+
+  public int getTotalSeats() {
+    return totalSeats;
+  }
+
+  public int getWordsPerRow() {
+    return wordsPerRow;
+  }
+
+  public boolean isValid(int row, int col) {
+    return row >= 0 && row < totalRows && col >= 0 && col < totalSeats;
+  }
+
+  public boolean isOccupied(int row, int col) {
+    return (words.get(row * wordsPerRow + (col >>> 6)) & (1L << col)) != 0;
+  }
+
+  /**
+   * Marks a seat as occupied or free
+   *
+   * @return true if the seat changed state
+   */
+  public boolean set(int row, int col, boolean flag) {
+    int index = row * wordsPerRow + (col >>> 6);
+    long mask = 1L << col;
+    long word = words.get(index);
+    if (((word & mask) != 0) == flag) {
+      return false;
+    }
+    if (runIndex != null) {
+      runIndex.markDirty(row);
+    }
+    if (flag) {
+      words.put(index, word | mask);
+      rowOccupied.put(row, rowOccupied.get(row) + 1);
+      occupiedCount++;
+    } else {
+      words.put(index, word & ~mask);
+      rowOccupied.put(row, rowOccupied.get(row) - 1);
+      occupiedCount--;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the occupancy bits of the given word of a row, bit i of word w being seat (w * 64 + i)
+   */
+  public long word(int row, int w) {
+    return words.get(row * wordsPerRow + w);
+  }
+
+  /** Replaces a whole word of a row, as read back from a snapshot */
+  public void setWord(int row, int w, long bits) {
+    int index = row * wordsPerRow + w;
+    int change = Long.bitCount(bits) - Long.bitCount(words.get(index));
+    rowOccupied.put(row, rowOccupied.get(row) + change);
+    occupiedCount += change;
+    words.put(index, bits);
+    if (runIndex != null) {
+      runIndex.markDirty(row);
+    }
+  }
+
+  public int getFreeSeats(int row) {
+    return totalSeats - rowOccupied.get(row);
+  }
+
+  public int getFreeSeats() {
+    return totalRows * totalSeats - occupiedCount;
+  }
+
+  /** Returns the length of the longest run of free seats next to each other in the row */
+  public int getLongestFreeRun(int row) {
+    int base = row * wordsPerRow;
+    int longest = 0;
+    int start = nextFree(words, base, wordsPerRow, totalSeats, 0);
+    while (start < totalSeats) {
+      int end = nextOccupied(words, base, wordsPerRow, totalSeats, start);
+      longest = Math.max(longest, end - start);
+      start = nextFree(words, base, wordsPerRow, totalSeats, end);
+    }
+    return longest;
+  }
+
+  /** Returns the length of the longest run of free seats next to each other in any row */
+  public int getLongestFreeRun() {
+    if (runIndex == null) {
+      runIndex = new FreeRunIndex(this);
+    }
+    return runIndex.getLongestFreeRun();
+  }
+
+  /**
+   * Finds the best free seats for a group of the given size: the block in the front-most row that
+   * has room for the whole group, as close to the middle of the row as possible, or failing that
+   * the most compact rectangle over up to MAX_BLOCK_ROWS adjacent rows, filled row by row
+   *
+   * @return the seat codes of the block, or null if no block fits
+   */
+  public int[] findBlock(int count) {
+    if (count <= 0) {
+      return null;
+    }
+    if (runIndex == null) {
+      runIndex = new FreeRunIndex(this);
+    }
+    int row = runIndex.findRow(count, 0);
+    if (row >= 0) {
+      int start = bestStart(words, row * wordsPerRow, count);
+      return block(row, 1, start, count, count);
+    }
+
+    LongBuffer combined = LongBuffer.allocate(wordsPerRow);
+    for (int rows = 2; rows <= Math.min(count, Math.min(totalRows, MAX_BLOCK_ROWS)); rows++) {
+      int width = (count + rows - 1) / rows;
+      row = runIndex.findRow(width, 0);
+      while (row >= 0 && row + rows <= totalRows) {
+        // a seat is free in the rectangle only if it is free in every one of its rows
+        for (int w = 0; w < wordsPerRow; w++) {
+          combined.put(w, words.get(row * wordsPerRow + w));
+        }
+        int tooShort = -1;
+        for (int r = row + 1; r < row + rows && tooShort < 0; r++) {
+          if (runIndex.getLongestFreeRun(r) < width) {
+            tooShort = r;
+          }
+          for (int w = 0; w < wordsPerRow; w++) {
+            combined.put(w, combined.get(w) | words.get(r * wordsPerRow + w));
+          }
+        }
+        if (tooShort < 0) {
+          int start = bestStart(combined, 0, width);
+          if (start >= 0) {
+            return block(row, rows, start, width, count);
+          }
+        }
+        row = runIndex.findRow(width, tooShort < 0 ? row + 1 : tooShort + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the start of the run of count free seats closest to the middle of the row, or -1 if
+   * no run is long enough
+   */
+  private int bestStart(LongBuffer bits, int base, int count) {
+    int middle = (totalSeats - count) / 2;
+    int best = -1;
+    int start = nextFree(bits, base, wordsPerRow, totalSeats, 0);
+    while (start < totalSeats) {
+      int end = nextOccupied(bits, base, wordsPerRow, totalSeats, start);
+      if (end - start >= count) {
+        int candidate = Math.max(start, Math.min(middle, end - count));
+        if (best < 0 || Math.abs(candidate - middle) < Math.abs(best - middle)) {
+          best = candidate;
+        }
+      }
+      start = nextFree(bits, base, wordsPerRow, totalSeats, end);
+    }
+    return best;
+  }
+
+  /** Lists count seats of a rectangle row by row, centring the seats of a partial last row */
+  private static int[] block(int row, int rows, int start, int width, int count) {
+    int[] seats = new int[count];
+    int i = 0;
+    for (int r = row; r < row + rows; r++) {
+      int inRow = Math.min(width, count - i);
+      int first = start + (width - inRow) / 2;
+      for (int c = first; c < first + inRow; c++) {
+        seats[i++] = Seats.code(r, c);
+      }
+    }
+    return seats;
+  }
+
+  /** Returns the first free seat at or after col of the row starting at base, or limit */
+  private static int nextFree(LongBuffer bits, int base, int wordsPerRow, int limit, int col) {
+    int w = col >>> 6;
+    if (w >= wordsPerRow) {
+      return limit;
+    }
+    long free = ~bits.get(base + w) & (-1L << col);
+    while (free == 0) {
+      if (++w == wordsPerRow) {
+        return limit;
+      }
+      free = ~bits.get(base + w);
+    }
+    return Math.min(limit, (w << 6) + Long.numberOfTrailingZeros(free));
+  }
+
+  /** Returns the first occupied seat at or after col of the row starting at base, or limit */
+  private static int nextOccupied(
+      LongBuffer bits, int base, int wordsPerRow, int limit, int col) {
+    int w = col >>> 6;
+    if (w >= wordsPerRow) {
+      return limit;
+    }
+    long occupied = bits.get(base + w) & (-1L << col);
+    while (occupied == 0) {
+      if (++w == wordsPerRow) {
+        return limit;
+      }
+      occupied = bits.get(base + w);
+    }
+    return Math.min(limit, (w << 6) + Long.numberOfTrailingZeros(occupied));
+  }
+}
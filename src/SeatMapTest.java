@@ -0,0 +1,165 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class SeatMapTest {
+  @Test
+  public void find_block_picks_front_row_closest_to_middle() {
+    SeatMap seatMap = new SeatMap(3, 10);
+    // row A has room for 3 only at the sides, row B has a run of 4 in the middle
+    for (int col = 2; col < 8; col++) {
+      seatMap.set(0, col, true);
+    }
+    Assert.assertArrayEquals(codes(0, 0, 1), seatMap.findBlock(2));
+    seatMap.set(1, 0, true);
+    seatMap.set(1, 1, true);
+    seatMap.set(1, 7, true);
+    Assert.assertArrayEquals(codes(1, 3, 4, 5), seatMap.findBlock(3));
+    Assert.assertArrayEquals(codes(1, 2, 3, 4, 5, 6), seatMap.findBlock(5));
+    Assert.assertArrayEquals(codes(2, 2, 3, 4, 5, 6, 7), seatMap.findBlock(6));
+  }
+
+  @Test
+  public void find_block_spans_adjacent_rows() {
+    SeatMap seatMap = new SeatMap(4, 6);
+    for (int row = 0; row < 4; row++) {
+      seatMap.set(row, 2, true);
+    }
+    // no row has 5 free seats together, rows A and B share the free columns 3 to 5
+    int[] seats = seatMap.findBlock(5);
+    Assert.assertArrayEquals(
+        new int[] {
+          Seats.code(0, 3), Seats.code(0, 4), Seats.code(0, 5), Seats.code(1, 3), Seats.code(1, 4)
+        },
+        seats);
+    Assert.assertNull(seatMap.findBlock(13));
+  }
+
+  @Test
+  public void find_block_matches_brute_force() {
+    Random random = new Random(7);
+    SeatMap seatMap = new SeatMap(40, 150);
+    for (int step = 0; step < 20000; step++) {
+      int row = random.nextInt(40);
+      int col = random.nextInt(150);
+      seatMap.set(row, col, random.nextInt(3) != 0);
+      if (step % 50 != 0) {
+        continue;
+      }
+      int count = 1 + random.nextInt(12);
+      int expectedRow = -1;
+      for (int r = 0; r < 40 && expectedRow < 0; r++) {
+        if (longestRun(seatMap, r) >= count) {
+          expectedRow = r;
+        }
+        Assert.assertEquals(longestRun(seatMap, r), seatMap.getLongestFreeRun(r));
+      }
+      int[] seats = seatMap.findBlock(count);
+      if (seats == null) {
+        Assert.assertEquals(-1, expectedRow);
+        continue;
+      }
+      Assert.assertEquals(count, seats.length);
+      for (int seat : seats) {
+        Assert.assertFalse(seatMap.isOccupied(Seats.row(seat), Seats.col(seat)));
+      }
+      if (expectedRow >= 0) {
+        for (int i = 0; i < count; i++) {
+          Assert.assertEquals(Seats.code(expectedRow, Seats.col(seats[0]) + i), seats[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void free_counts_follow_seat_and_word_changes() {
+    SeatMap seatMap = new SeatMap(3, 70);
+    seatMap.set(0, 5, true);
+    seatMap.set(1, 65, true);
+    seatMap.setWord(2, 0, 0xFFL);
+    seatMap.set(1, 65, false);
+
+    Assert.assertEquals(69, seatMap.getFreeSeats(0));
+    Assert.assertEquals(70, seatMap.getFreeSeats(1));
+    Assert.assertEquals(62, seatMap.getFreeSeats(2));
+    Assert.assertEquals(201, seatMap.getFreeSeats());
+    Assert.assertEquals(70, seatMap.getLongestFreeRun());
+
+    seatMap.set(1, 0, true);
+    Assert.assertEquals(69, seatMap.getLongestFreeRun());
+  }
+
+  @Test
+  public void off_heap_seats_match_heap_seats() {
+    SeatRegion region = new SeatRegion(1 << 16);
+    SeatMap offHeap = new SeatMap(12, 150, region);
+    SeatMap other = new SeatMap(5, 7, region);
+    SeatMap heap = new SeatMap(12, 150);
+    Assert.assertTrue(offHeap.isOffHeap());
+    Assert.assertFalse(heap.isOffHeap());
+
+    Random random = new Random(7);
+    for (int i = 0; i < 5000; i++) {
+      int row = random.nextInt(12);
+      int col = random.nextInt(150);
+      boolean flag = random.nextInt(3) > 0;
+      Assert.assertEquals(heap.set(row, col, flag), offHeap.set(row, col, flag));
+      other.set(row % 5, col % 7, true);
+      if (i % 500 == 0) {
+        Assert.assertArrayEquals(heap.findBlock(4), offHeap.findBlock(4));
+      }
+    }
+    for (int row = 0; row < 12; row++) {
+      for (int w = 0; w < heap.getWordsPerRow(); w++) {
+        Assert.assertEquals(heap.word(row, w), offHeap.word(row, w));
+      }
+      Assert.assertEquals(heap.getFreeSeats(row), offHeap.getFreeSeats(row));
+    }
+    Assert.assertEquals(heap.getLongestFreeRun(), offHeap.getLongestFreeRun());
+    Assert.assertEquals(0, other.getFreeSeats());
+  }
+
+  @Test
+  public void full_region_falls_back_to_heap() {
+    SeatRegion region = new SeatRegion(64);
+    // 2 rows of one word and 2 row counts take 24 bytes
+    Assert.assertTrue(new SeatMap(2, 10, region).isOffHeap());
+    Assert.assertTrue(new SeatMap(2, 64, region).isOffHeap());
+    Assert.assertEquals(48, region.getUsed());
+    Assert.assertFalse(new SeatMap(2, 65, region).isOffHeap());
+  }
+
+  @Test
+  public void region_size_failure_beyond_int_range() {
+    long[] sizes = {0, -1, SeatRegion.MAX_MEGABYTES + 1, 4096};
+    for (long megabytes : sizes) {
+      try {
+        SeatRegion.ofMegabytes(megabytes);
+        Assert.fail();
+      } catch (IllegalArgumentException e) {
+        Assert.assertEquals(
+            "Off-heap seat region must be between 1 and 2047 MB: " + megabytes, e.getMessage());
+      }
+    }
+    Assert.assertEquals(1 << 20, SeatRegion.ofMegabytes(1).getCapacity());
+  }
+
+  private static int longestRun(SeatMap seatMap, int row) {
+    int longest = 0;
+    int run = 0;
+    for (int col = 0; col < seatMap.getTotalSeats(); col++) {
+      run = seatMap.isOccupied(row, col) ? 0 : run + 1;
+      longest = Math.max(longest, run);
+    }
+    return longest;
+  }
+
+  private static int[] codes(int row, int... cols) {
+    int[] codes = new int[cols.length];
+    for (int i = 0; i < cols.length; i++) {
+      codes[i] = Seats.code(row, cols[i]);
+    }
+    return codes;
+  }
+}
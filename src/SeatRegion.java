@@ -0,0 +1,69 @@
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One region of direct memory, outside the Java heap, holding the seat bits and row counts of
+ * many shows, each SeatMap at its own offset. With a region, the heap holds only a few objects per
+ * show however many seats it has, so loading a large schedule adds little for the garbage
+ * collector to trace or copy. Space is handed out from the start of the region and never given
+ * back, as shows are never removed.
+ */
+class SeatRegion {
+  // a direct buffer is indexed by int
+  public static final long MAX_MEGABYTES = Integer.MAX_VALUE >> 20;
+  private static final int ALIGNMENT = 8;
+
+  private final ByteBuffer region;
+  // guarded by this
+  private int used;
+
+  /**
+   * Allocates the region, which is zeroed
+   *
+   * @param capacity size of the region in bytes
+   */
+  SeatRegion(int capacity) {
+    region = ByteBuffer.allocateDirect(capacity);
+  }
+
+  /**
+   * Allocates a region of the given number of megabytes
+   *
+   * @exception IllegalArgumentException if the size is not between 1 and MAX_MEGABYTES
+   */
+  public static SeatRegion ofMegabytes(long megabytes) {
+    if (megabytes <= 0 || megabytes > MAX_MEGABYTES) {
+      throw new IllegalArgumentException(
+          "Off-heap seat region must be between 1 and " + MAX_MEGABYTES + " MB: " + megabytes);
+    }
+    return new SeatRegion((int) (megabytes << 20));
+  }
+
+  public int getCapacity() {
+    return region.capacity();
+  }
+
+  /** Returns the number of bytes handed out so far */
+  public synchronized int getUsed() {
+    return used;
+  }
+
+  /**
+   * Reserves zeroed bytes at the next free offset, aligned for long access
+   *
+   * @return a buffer in native byte order over the bytes, or null if the region has no room left
+   */
+  public synchronized ByteBuffer allocate(int size) {
+    int offset = used;
+    if (size > region.capacity() - offset) {
+      return null;
+    }
+    used = offset + (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    used = Math.min(used, region.capacity());
+    ByteBuffer bytes = region.duplicate();
+    // through Buffer, whose position and limit return Buffer on every JDK
+    ((Buffer) bytes).limit(offset + size).position(offset);
+    return bytes.slice().order(ByteOrder.nativeOrder());
+  }
+}
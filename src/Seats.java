@@ -0,0 +1,88 @@
+/**
+ * Packs a seat's zero-based row and column into a single int seat code, with the row in the high
+ * half and the column in the low half, and converts between seat codes and labels such as "B7".
+ * Rows are lettered A to Z, then AA to AZ, BA and so on up to ZZ, the BookingASystem.MAX_ROWS
+ * rows a show can have.
+ */
+final class Seats {
+  private static final int MAX_ROW_LETTERS = 2;
+
+  private Seats() {}
+
+  public static int code(int row, int col) {
+    return row << 16 | col;
+  }
+
+  public static int row(int code) {
+    return code >>> 16;
+  }
+
+  public static int col(int code) {
+    return code & 0xFFFF;
+  }
+
+  /**
+   * Parses a seat label made of the row letters followed by a one-based seat number, ignoring the
+   * case of the letters
+   *
+   * @return the seat code, or -1 if the label is malformed
+   */
+  public static int parse(CharSequence label, int start, int end) {
+    int row = 0;
+    int i = start;
+    for (; i < end && i - start <= MAX_ROW_LETTERS; i++) {
+      char letter = Character.toUpperCase(label.charAt(i));
+      if (letter < 'A' || letter > 'Z') {
+        break;
+      }
+      row = row * 26 + (letter - 'A' + 1);
+    }
+    if (i == start || i - start > MAX_ROW_LETTERS || i == end) {
+      return -1;
+    }
+    int seat = 0;
+    for (; i < end; i++) {
+      int digit = label.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || seat > (0xFFFF - digit) / 10) {
+        return -1;
+      }
+      seat = seat * 10 + digit;
+    }
+    if (seat == 0) {
+      return -1;
+    }
+    return code(row - 1, seat - 1);
+  }
+
+  public static int parse(CharSequence label) {
+    return parse(label, 0, label.length());
+  }
+
+  public static TextBuffer appendLabel(TextBuffer buffer, int code) {
+    return appendRow(buffer, row(code)).append(col(code) + 1);
+  }
+
+  /** Appends the letters of a zero-based row */
+  public static TextBuffer appendRow(TextBuffer buffer, int row) {
+    if (row >= 26) {
+      appendRow(buffer, row / 26 - 1);
+    }
+    return buffer.append((char) ('A' + row % 26));
+  }
+
+  public static String label(int code) {
+    return appendLabel(new TextBuffer(8), code).toString();
+  }
+
+  /** Formats seat codes the way a List of labels prints, e.g. "[D3, D4]" */
+  public static TextBuffer appendLabels(TextBuffer buffer, int[] codes) {
+    buffer.append('[');
+    for (int i = 0; i < codes.length; i++) {
+      if (i > 0) {
+        buffer.append(", ");
+      }
+      appendLabel(buffer, codes[i]);
+    }
+    return buffer.append(']');
+  }
+}
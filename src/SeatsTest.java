@@ -0,0 +1,30 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class SeatsTest {
+  @Test
+  public void parse_multi_letter_rows() {
+    Assert.assertEquals(Seats.code(0, 0), Seats.parse("A1"));
+    Assert.assertEquals(Seats.code(25, 9), Seats.parse("z10"));
+    Assert.assertEquals(Seats.code(26, 0), Seats.parse("AA1"));
+    Assert.assertEquals(Seats.code(27, 41), Seats.parse("Ab42"));
+    Assert.assertEquals(Seats.code(701, 999), Seats.parse("ZZ1000"));
+  }
+
+  @Test
+  public void parse_failure_malformed_labels() {
+    String[] labels = {"", "A", "AA", "1", "1A", "A0", "A1A", "AAA1", "AAAA1", "A65537", "A-1", "A 1"};
+    for (String label : labels) {
+      Assert.assertEquals(label, -1, Seats.parse(label));
+    }
+  }
+
+  @Test
+  public void label_round_trip() {
+    for (int row = 0; row < BookingASystem.MAX_ROWS; row++) {
+      int code = Seats.code(row, row % 1000);
+      Assert.assertEquals(code, Seats.parse(Seats.label(code)));
+    }
+    Assert.assertEquals("ZZ1000", Seats.label(Seats.code(701, 999)));
+  }
+}
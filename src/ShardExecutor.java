@@ -0,0 +1,249 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of single-threaded event loops, each owning a partition of the shows. A task for a
+ * show always runs on the thread of the show's shard, one at a time and in the order the tasks
+ * were submitted, so the shard is the only writer of its shows and commands for shows on
+ * different shards run in parallel without sharing anything.
+ *
+ * <p>Tasks reach a shard through a bounded ring buffer that any number of threads can offer to
+ * without a lock: a producer claims a slot with one compare-and-set on the tail and publishes it
+ * by writing the slot's sequence number, which the shard's thread polls. An idle shard spins
+ * briefly and then parks until a producer wakes it.
+ */
+class ShardExecutor implements AutoCloseable {
+  private static final int SPINS = 100;
+
+  private final Shard[] shards;
+
+  /**
+   * Starts the threads of the shards, which are daemons
+   *
+   * @param ringCapacity number of tasks each ring buffer holds, rounded up to a power of two
+   */
+  ShardExecutor(int count, int ringCapacity) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Invalid number of shards: " + count);
+    }
+    shards = new Shard[count];
+    for (int i = 0; i < count; i++) {
+      shards[i] = new Shard(ringCapacity, "shard-" + i);
+    }
+  }
+
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  /** Returns the shard that owns the key, e.g. a show number */
+  public int shardOf(int key) {
+    return Math.floorMod(key, shards.length);
+  }
+
+  /** Returns true if the current thread is the thread of the shard */
+  public boolean isOnShard(int shard) {
+    return Thread.currentThread() == shards[shard].thread;
+  }
+
+  /**
+   * Runs the command on the shard and waits for its result. Runs it directly if the current
+   * thread is the shard's thread.
+   *
+   * @exception RuntimeException thrown by the command, rethrown in the calling thread
+   * @exception Error thrown by the command, rethrown in the calling thread
+   */
+  public <T> T call(int shard, Supplier<T> command) {
+    if (isOnShard(shard)) {
+      return command.get();
+    }
+    Task<T> task = new Task<>(command, Thread.currentThread());
+    shards[shard].submit(task);
+    for (int spins = 0; !task.done; spins++) {
+      if (spins < SPINS) {
+        Thread.yield();
+      } else {
+        LockSupport.park(task);
+      }
+    }
+    if (task.error instanceof RuntimeException) {
+      throw (RuntimeException) task.error;
+    }
+    if (task.error instanceof Error) {
+      throw (Error) task.error;
+    }
+    if (task.error != null) {
+      throw new IllegalStateException(task.error);
+    }
+    return task.result;
+  }
+
+  /** Queues the command on the shard without waiting for it */
+  public void execute(int shard, Runnable command) {
+    if (isOnShard(shard)) {
+      command.run();
+      return;
+    }
+    shards[shard].submit(
+        new Task<>(
+            () -> {
+              command.run();
+              return null;
+            },
+            null));
+  }
+
+  /** Stops the threads once the tasks already queued have run */
+  @Override
+  public void close() {
+    for (Shard shard : shards) {
+      shard.running = false;
+      LockSupport.unpark(shard.thread);
+    }
+    for (Shard shard : shards) {
+      try {
+        shard.thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static final class Task<T> {
+    private final Supplier<T> command;
+    // null for a task that nobody waits for
+    private final Thread waiter;
+    private T result;
+    private Throwable error;
+    private volatile boolean done;
+
+    private Task(Supplier<T> command, Thread waiter) {
+      this.command = command;
+      this.waiter = waiter;
+    }
+
+    private void run() {
+      try {
+        result = command.get();
+      } catch (Throwable e) {
+        // errors too, so that the waiter is woken and the shard's thread carries on
+        error = e;
+      } finally {
+        done = true;
+        if (waiter != null) {
+          LockSupport.unpark(waiter);
+        }
+      }
+    }
+  }
+
+  private static final class Shard implements Runnable {
+    private final Ring ring;
+    private final Thread thread;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    private Shard(int ringCapacity, String name) {
+      ring = new Ring(ringCapacity);
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private void submit(Task<?> task) {
+      while (!ring.offer(task)) {
+        // full, the shard is behind
+        LockSupport.unpark(thread);
+        Thread.yield();
+      }
+      if (sleeping) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    @Override
+    public void run() {
+      int idle = 0;
+      while (true) {
+        Task<?> task = ring.poll();
+        if (task != null) {
+          task.run();
+          idle = 0;
+        } else if (!running) {
+          return;
+        } else if (++idle < SPINS) {
+          Thread.yield();
+        } else {
+          // a producer that published before this write sees sleeping as false but its task is
+          // found by the poll below, one that publishes after it sees true and wakes the thread
+          sleeping = true;
+          task = ring.poll();
+          if (task == null && running) {
+            LockSupport.park(this);
+          }
+          sleeping = false;
+          if (task != null) {
+            task.run();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Bounded multi-producer, single-consumer queue. The slot for position p is free when its
+   * sequence is p, and holds a task for the consumer when its sequence is p + 1.
+   */
+  private static final class Ring {
+    private final Task<?>[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // only used by the consumer
+    private long head;
+
+    private Ring(int capacity) {
+      int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+      slots = new Task<?>[size];
+      sequences = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+        sequences.set(i, i);
+      }
+      mask = size - 1;
+    }
+
+    /** Returns false if the ring is full */
+    private boolean offer(Task<?> task) {
+      while (true) {
+        long position = tail.get();
+        int index = (int) position & mask;
+        long sequence = sequences.get(index);
+        if (sequence < position) {
+          return false;
+        }
+        if (sequence == position && tail.compareAndSet(position, position + 1)) {
+          slots[index] = task;
+          // publishes the slot to the consumer
+          sequences.set(index, position + 1);
+          return true;
+        }
+      }
+    }
+
+    private Task<?> poll() {
+      int index = (int) head & mask;
+      if (sequences.get(index) != head + 1) {
+        return null;
+      }
+      Task<?> task = slots[index];
+      slots[index] = null;
+      // frees the slot for the producer one lap later
+      sequences.set(index, head + slots.length);
+      head++;
+      return task;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ShardExecutorTest {
+  @Test
+  public void call_returns_result_and_rethrows() {
+    try (ShardExecutor shards = new ShardExecutor(2, 4)) {
+      Assert.assertEquals("shard-1", shards.call(1, () -> Thread.currentThread().getName()));
+      Assert.assertEquals(Integer.valueOf(7), shards.call(0, () -> shards.call(0, () -> 7)));
+      try {
+        shards.call(
+            0,
+            () -> {
+              throw new IllegalArgumentException(BookingASystem.ERROR_MSG_SHOW_NUMBER);
+            });
+        Assert.fail();
+      } catch (IllegalArgumentException e) {
+        Assert.assertEquals(BookingASystem.ERROR_MSG_SHOW_NUMBER, e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void call_rethrows_errors_and_shard_carries_on() {
+    try (ShardExecutor shards = new ShardExecutor(1, 4)) {
+      shards.execute(
+          0,
+          () -> {
+            throw new AssertionError("unwaited");
+          });
+      try {
+        shards.call(
+            0,
+            () -> {
+              throw new AssertionError("failed");
+            });
+        Assert.fail();
+      } catch (AssertionError e) {
+        Assert.assertEquals("failed", e.getMessage());
+      }
+      Assert.assertEquals("shard-0", shards.call(0, () -> Thread.currentThread().getName()));
+    }
+  }
+
+  @Test
+  public void tasks_of_a_shard_run_one_at_a_time_in_order() throws Exception {
+    // a small ring so that producers find it full
+    ShardExecutor shards = new ShardExecutor(3, 4);
+    List<List<Integer>> runs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      runs.add(new ArrayList<>());
+    }
+    ConcurrentMap<Integer, String> threads = new ConcurrentHashMap<>();
+    ExecutorService producers = Executors.newFixedThreadPool(6);
+    for (int p = 0; p < 6; p++) {
+      final int producer = p;
+      producers.execute(
+          () -> {
+            for (int i = 0; i < 10_000; i++) {
+              int key = producer * 10_000 + i;
+              int shard = shards.shardOf(key);
+              // plain lists, only ever touched by the thread of their shard
+              shards.execute(
+                  shard,
+                  () -> {
+                    runs.get(shard).add(key);
+                    threads.put(key, Thread.currentThread().getName());
+                  });
+            }
+          });
+    }
+    producers.shutdown();
+    Assert.assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+    shards.close();
+
+    int total = 0;
+    for (int shard = 0; shard < 3; shard++) {
+      List<Integer> keys = runs.get(shard);
+      total += keys.size();
+      int[] last = new int[6];
+      Arrays.fill(last, -1);
+      for (int key : keys) {
+        Assert.assertEquals("shard-" + shard, threads.get(key));
+        // each producer's tasks run in the order it submitted them
+        Assert.assertTrue(key > last[key / 10_000]);
+        last[key / 10_000] = key;
+      }
+    }
+    Assert.assertEquals(60_000, total);
+  }
+}
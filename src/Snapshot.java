@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fixed-layout binary image of every show and live ticket, written by CHECKPOINT and memory-mapped
+ * when the system starts. Opening a snapshot only maps its show directory and ticket index; a
+ * show's seat map and tickets are read the first time the show or one of its tickets is looked up,
+ * so startup takes the same time however many shows the snapshot holds.
+ *
+ * <p>The file is a header (magic number, show count, ticket count, next ticket number, the journal
+ * position that replay starts from and the positions of the directory and the index), one block
+ * per show (occupancy words, ticket count, then each ticket's number, phone number, epoch millis,
+ * seat count and seat codes), the show directory sorted by show number and the ticket index of
+ * (ticket number, show number) pairs sorted by ticket number. Fields are big-endian.
+ *
+ * <p>Each show also records how far the journal had got when the show was captured, so that
+ * replaying the journal on top of the snapshot skips the records already contained in it.
+ */
+class Snapshot implements AutoCloseable {
+  private static final int MAGIC = 0x424B5331;
+  private static final int HEADER_SIZE = 4 * 4 + 3 * 8;
+  private static final int DIRECTORY_ENTRY_SIZE = 4 * 4 + 2 * 8 + 4;
+  private static final int INDEX_ENTRY_SIZE = 2 * 4;
+  private static final int TICKET_SIZE = 3 * 4 + 8;
+
+  private final FileChannel channel;
+  private final ByteBuffer directory;
+  private final ByteBuffer index;
+  private final int showCount;
+  private final int ticketCount;
+  private final int nextTicket;
+  private final long journalStart;
+
+  private Snapshot(FileChannel channel) throws IOException {
+    this.channel = channel;
+    long size = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    channel.read(header, 0);
+    if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+      throw new IOException("Not a booking snapshot");
+    }
+    showCount = header.getInt(4);
+    ticketCount = header.getInt(8);
+    nextTicket = header.getInt(12);
+    journalStart = header.getLong(16);
+    long directoryOffset = header.getLong(24);
+    long indexOffset = header.getLong(32);
+    if (showCount < 0
+        || ticketCount < 0
+        || directoryOffset + (long) showCount * DIRECTORY_ENTRY_SIZE > size
+        || indexOffset + (long) ticketCount * INDEX_ENTRY_SIZE > size) {
+      throw new IOException("Truncated booking snapshot");
+    }
+    directory =
+        channel.map(
+            FileChannel.MapMode.READ_ONLY, directoryOffset, showCount * DIRECTORY_ENTRY_SIZE);
+    index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, ticketCount * INDEX_ENTRY_SIZE);
+  }
+
+  /**
+   * Maps the snapshot file, if there is one, and has the service load shows and tickets from it
+   * on demand
+   *
+   * @return the snapshot, which must stay open while the service is in use, or null if the file
+   *     does not exist
+   * @exception IOException if the file cannot be read or is not a snapshot
+   */
+  public static Snapshot open(Path path, BookingService service) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      Snapshot snapshot = new Snapshot(channel);
+      service.setSnapshot(snapshot);
+      return snapshot;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public int getShowCount() {
+    return showCount;
+  }
+
+  /** Returns the show number of the given directory entry, entries being sorted by show number */
+  public int getShowNum(int entry) {
+    return directory.getInt(entry * DIRECTORY_ENTRY_SIZE);
+  }
+
+  public int getNextTicket() {
+    return nextTicket;
+  }
+
+  /** Returns the journal position before which every record is contained in the snapshot */
+  public long getJournalStart() {
+    return journalStart;
+  }
+
+  /**
+   * Returns the journal position at which the show was captured, records of the show before it
+   * being contained in the snapshot
+   *
+   * @return the position, or -1 if the snapshot does not hold the show
+   */
+  public long getJournalOffset(int showNum) {
+    int entry = findShow(showNum);
+    return entry < 0 ? -1 : directory.getLong(entry * DIRECTORY_ENTRY_SIZE + 16);
+  }
+
+  /**
+   * Returns the show number of a live ticket
+   *
+   * @return the show number, or 0 if the snapshot does not hold the ticket
+   */
+  public int getShowOfTicket(int ticketNum) {
+    int low = 0;
+    int high = ticketCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int value = index.getInt(mid * INDEX_ENTRY_SIZE);
+      if (value < ticketNum) {
+        low = mid + 1;
+      } else if (value > ticketNum) {
+        high = mid - 1;
+      } else {
+        return index.getInt(mid * INDEX_ENTRY_SIZE + 4);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Reads a show with its seat map from its block, adding its tickets to the ticket table
+   *
+   * @return the show, or null if the snapshot does not hold it
+   */
+  public Show loadShow(int showNum, TicketTable ticketTable) throws IOException {
+    return loadShow(showNum, ticketTable, null);
+  }
+
+  /** Same as loadShow(int, TicketTable), keeping the seats of the show in the region */
+  public Show loadShow(int showNum, TicketTable ticketTable, SeatRegion seatRegion)
+      throws IOException {
+    int entry = findShow(showNum);
+    if (entry < 0) {
+      return null;
+    }
+    int base = entry * DIRECTORY_ENTRY_SIZE;
+    Show show =
+        new Show(
+            showNum, directory.getInt(base + 4), directory.getInt(base + 8),
+            directory.getInt(base + 12), ticketTable, seatRegion);
+    ByteBuffer block =
+        channel.map(
+            FileChannel.MapMode.READ_ONLY,
+            directory.getLong(base + 24),
+            directory.getInt(base + 32));
+    int position = 0;
+    synchronized (show) {
+      for (int r = 0; r < show.getTotalRows(); r++) {
+        for (int w = 0; w < show.getWordsPerRow(); w++) {
+          show.setOccupiedWord(r, w, block.getLong(position));
+          position += 8;
+        }
+      }
+      int tickets = block.getInt(position);
+      position += 4;
+      for (int t = 0; t < tickets; t++) {
+        int ticketNum = block.getInt(position);
+        int phoneNum = block.getInt(position + 4);
+        long epochMillis = block.getLong(position + 8);
+        int[] seats = new int[block.getInt(position + 16)];
+        position += TICKET_SIZE;
+        for (int i = 0; i < seats.length; i++) {
+          seats[i] = block.getInt(position);
+          position += 4;
+        }
+        show.addTicket(ticketNum, phoneNum, seats, epochMillis);
+      }
+    }
+    return show;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private int findShow(int showNum) {
+    int low = 0;
+    int high = showCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int value = directory.getInt(mid * DIRECTORY_ENTRY_SIZE);
+      if (value < showNum) {
+        low = mid + 1;
+      } else if (value > showNum) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Writes a snapshot to a temporary file next to the target and moves it into place once it is
+   * complete and fsynced, so that a crash never leaves a partial snapshot behind
+   */
+  static class Writer implements AutoCloseable {
+    private final Path path;
+    private final Path temp;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final List<Entry> entries = new ArrayList<>();
+    private long[] tickets = new long[1024];
+    private int ticketCount;
+    private long position = HEADER_SIZE;
+    private boolean finished;
+
+    Writer(Path path) throws IOException {
+      this.path = path;
+      this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+      this.channel =
+          FileChannel.open(
+              temp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE);
+      channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Writes the show's block, the caller must hold the show's monitor
+     *
+     * @param journalOffset the journal position at the time of the capture
+     */
+    public void addShow(Show show, long journalOffset) throws IOException {
+      Entry entry = new Entry();
+      entry.showNum = show.getShowNum();
+      entry.totalRows = show.getTotalRows();
+      entry.totalSeats = show.getTotalSeats();
+      entry.cancellationWindow = show.getCancellationWindow();
+      entry.journalOffset = journalOffset;
+      entry.blockOffset = position;
+      int wordsPerRow = show.getWordsPerRow();
+      long[] words = new long[show.getTotalRows() * wordsPerRow];
+      for (int r = 0; r < show.getTotalRows(); r++) {
+        for (int w = 0; w < wordsPerRow; w++) {
+          words[r * wordsPerRow + w] = show.getOccupiedWord(r, w);
+        }
+      }
+      // held seats are free again after a restart, as holds are not kept
+      show.forEachHold(
+          hold -> {
+            for (int seat : hold.getSeats()) {
+              words[Seats.row(seat) * wordsPerRow + (Seats.col(seat) >>> 6)] &=
+                  ~(1L << Seats.col(seat));
+            }
+          });
+      for (long word : words) {
+        reserve(8).putLong(word);
+      }
+      List<Ticket> tickets = show.getTickets();
+      reserve(4).putInt(tickets.size());
+      for (Ticket ticket : tickets) {
+        int[] seats = ticket.getSeats();
+        ByteBuffer out = reserve(TICKET_SIZE);
+        out.putInt(ticket.getTicketNum()).putInt(ticket.getPhoneNum());
+        out.putLong(ticket.getTimestamp().toEpochMilli()).putInt(seats.length);
+        for (int seat : seats) {
+          reserve(4).putInt(seat);
+        }
+        addTicket(ticket.getTicketNum(), entry.showNum);
+      }
+      entry.blockLength = (int) (position - entry.blockOffset);
+      entries.add(entry);
+    }
+
+    /**
+     * Writes the directory, the index and the header and moves the file into place
+     *
+     * @param nextTicket the ticket number counter once every show has been captured
+     * @param journalStart the journal position before any show was captured
+     */
+    public void finish(int nextTicket, long journalStart) throws IOException {
+      entries.sort(Comparator.comparingInt(entry -> entry.showNum));
+      long directoryOffset = position;
+      for (Entry entry : entries) {
+        reserve(DIRECTORY_ENTRY_SIZE)
+            .putInt(entry.showNum)
+            .putInt(entry.totalRows)
+            .putInt(entry.totalSeats)
+            .putInt(entry.cancellationWindow)
+            .putLong(entry.journalOffset)
+            .putLong(entry.blockOffset)
+            .putInt(entry.blockLength);
+      }
+
+      // ticket numbers are positive, so sorting the packed pairs sorts by ticket number
+      Arrays.sort(tickets, 0, ticketCount);
+      long indexOffset = position;
+      for (int i = 0; i < ticketCount; i++) {
+        reserve(INDEX_ENTRY_SIZE).putLong(tickets[i]);
+      }
+      flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(entries.size()).putInt(ticketCount).putInt(nextTicket);
+      header.putLong(journalStart).putLong(directoryOffset).putLong(indexOffset);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      channel.force(true);
+      channel.close();
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      finished = true;
+    }
+
+    /** Discards the temporary file unless the snapshot was finished */
+    @Override
+    public void close() throws IOException {
+      channel.close();
+      if (!finished) {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    private void addTicket(int ticketNum, int showNum) {
+      if (ticketCount == tickets.length) {
+        tickets = Arrays.copyOf(tickets, ticketCount * 2);
+      }
+      tickets[ticketCount++] = (long) ticketNum << 32 | (showNum & 0xFFFFFFFFL);
+    }
+
+    private ByteBuffer reserve(int size) throws IOException {
+      if (buffer.remaining() < size) {
+        flush();
+      }
+      position += size;
+      return buffer;
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  private static class Entry {
+    int showNum;
+    int totalRows;
+    int totalSeats;
+    int cancellationWindow;
+    long journalOffset;
+    long blockOffset;
+    int blockLength;
+  }
+}
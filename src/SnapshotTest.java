@@ -0,0 +1,214 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+public class SnapshotTest {
+  private Path snapshotFile;
+  private Path journalFile;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    snapshotFile = Files.createTempFile("snapshot", ".bin");
+    journalFile = Files.createTempFile("journal", ".bin");
+    Files.delete(snapshotFile);
+    Files.delete(journalFile);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(snapshotFile);
+    Files.deleteIfExists(journalFile);
+  }
+
+  @Test
+  public void open_loads_shows_and_tickets_on_demand() throws Exception {
+    BookingService service = new BookingService();
+    service.setup(100, 10, 10, 2);
+    service.setup(200, 702, 1000, 30);
+    service.book(100, 61234567, new int[] {Seats.parse("D3"), Seats.parse("D4")});
+    service.book(200, 91234567, new int[] {Seats.parse("ZZ1000"), Seats.parse("AB70")});
+    service.book(100, 81234567, new int[] {Seats.parse("J10")});
+    Assert.assertEquals(0, service.cancel(3, 81234567));
+    service.checkpoint(snapshotFile);
+
+    BookingService restored = new BookingService();
+    try (Snapshot snapshot = Snapshot.open(snapshotFile, restored)) {
+      Assert.assertEquals(2, snapshot.getShowCount());
+      Assert.assertNull(restored.getShow(300));
+      Assert.assertNull(restored.getTicket(3));
+
+      // looking up a ticket loads its show
+      Assert.assertEquals(200, restored.getTicket(2).getShowNum());
+      Assert.assertEquals(service.getShow(200).toString(), restored.getShow(200).toString());
+      Assert.assertEquals(702 * 1000 - 2, restored.getShow(200).getFreeSeats());
+      Assert.assertTrue(restored.getShow(200).getOccupiedSeats(701, 999));
+
+      Assert.assertEquals(service.getShow(100).toString(), restored.getShow(100).toString());
+      Assert.assertEquals(98, restored.getShow(100).getFreeSeats());
+      Assert.assertEquals(2, restored.getShow(100).getCancellationWindow());
+      Assert.assertEquals(
+          service.getTicket(1).getTimestamp().toEpochMilli(),
+          restored.getTicket(1).getTimestamp().toEpochMilli());
+
+      Assert.assertEquals(4, restored.book(100, 81234567, new int[] {0}).getTicketNum());
+      Assert.assertEquals(0, restored.cancel(1, 61234567));
+      Assert.assertEquals(99, restored.getShow(100).getFreeSeats());
+    }
+  }
+
+  @Test
+  public void queries_across_shows_load_snapshot_shows_once() throws Exception {
+    BookingService service = new BookingService();
+    for (int showNum = 1; showNum <= 50; showNum++) {
+      service.setup(showNum, 1, showNum, 2);
+    }
+    service.book(7, 61234567, new int[] {Seats.parse("A1")});
+    service.book(42, 61234567, new int[] {Seats.parse("A2")});
+    service.checkpoint(snapshotFile);
+
+    assertSnapshotShowsLoadedOnce(2, restored -> restored.getTicketsOfPhone(61234567).size());
+    assertSnapshotShowsLoadedOnce(11, restored -> restored.countShowsWithFreeSeats(40));
+    assertSnapshotShowsLoadedOnce(21, restored -> restored.countShowsWithFreeRun(30));
+    assertSnapshotShowsLoadedOnce(2, restored -> restored.findShowsWithFreeRun(49, 10).size());
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void setup_failure_show_in_snapshot() throws Exception {
+    BookingService service = new BookingService();
+    service.setup(100, 10, 10, 2);
+    service.checkpoint(snapshotFile);
+
+    BookingService restored = new BookingService();
+    try (Snapshot ignored = Snapshot.open(snapshotFile, restored)) {
+      restored.setup(100, 5, 5, 5);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(BookingASystem.ERROR_MSG_DUPLICATE_SHOW, e.getMessage());
+    }
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void journal_replays_only_records_after_snapshot() throws Exception {
+    BookingService service = new BookingService();
+    try (Journal journal = Journal.open(journalFile, service)) {
+      service.setJournal(journal);
+      service.setup(100, 10, 10, 2);
+      service.setup(200, 5, 5, 30);
+      service.book(100, 61234567, new int[] {Seats.parse("D3"), Seats.parse("D4")});
+      service.checkpoint(snapshotFile);
+      service.book(200, 91234567, new int[] {Seats.parse("A1")});
+      service.setup(300, 1, 1, 1);
+      Assert.assertEquals(0, service.cancel(1, 61234567));
+    }
+
+    BookingService restored = new BookingService();
+    try (Snapshot ignored = Snapshot.open(snapshotFile, restored);
+        Journal journal = Journal.open(journalFile, restored)) {
+      restored.setJournal(journal);
+      Assert.assertNull(restored.getTicket(1));
+      Assert.assertEquals(100, restored.getShow(100).getFreeSeats());
+      Assert.assertEquals(24, restored.getShow(200).getFreeSeats());
+      Assert.assertEquals(1, restored.getShow(300).getFreeSeats());
+      Assert.assertEquals(service.getShow(200).toString(), restored.getShow(200).toString());
+      Assert.assertEquals(3, restored.book(100, 61234567, new int[] {0}).getTicketNum());
+    }
+  }
+
+  @Test
+  @SuppressWarnings("try")
+  public void open_failure_journal_ends_before_snapshot() throws Exception {
+    BookingService service = new BookingService();
+    try (Journal journal = Journal.open(journalFile, service)) {
+      service.setJournal(journal);
+      service.setup(100, 10, 10, 2);
+      service.checkpoint(snapshotFile);
+    }
+    Files.delete(journalFile);
+
+    BookingService restored = new BookingService();
+    try (Snapshot ignored = Snapshot.open(snapshotFile, restored)) {
+      Journal.open(journalFile, restored).close();
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("Journal ends before the snapshot was taken", e.getMessage());
+    }
+  }
+
+  @Test
+  public void open_failure_not_a_snapshot() throws Exception {
+    Files.write(snapshotFile, "SETUP 1 1 1 1".getBytes(StandardCharsets.US_ASCII));
+    try {
+      Snapshot.open(snapshotFile, new BookingService()).close();
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("Not a booking snapshot", e.getMessage());
+    }
+  }
+
+  @Test
+  public void main_checkpoint_then_restart_from_snapshot() throws Exception {
+    Path commandFile = Files.createTempFile("commands", ".txt");
+    Path outputFile = Files.createTempFile("output", ".txt");
+    try {
+      String commands =
+          "SETUP 100 10 10 2\nMODE BUYER\nBOOK 100 61234567 D3,D4\nCHECKPOINT snapshot\n"
+              + "MODE ADMIN\nCHECKPOINT "
+              + snapshotFile
+              + "\n";
+      Files.write(commandFile, commands.getBytes());
+      BookingASystem.main(new String[] {commandFile.toString(), outputFile.toString()});
+      String output = new String(Files.readAllBytes(outputFile), StandardCharsets.US_ASCII);
+      Assert.assertTrue(
+          output.contains(BookingASystem.ERROR_MSG_INVALID_INPUT + BookingASystem.ERROR_MSG_MODE));
+      Assert.assertTrue(output.endsWith(BookingASystem.MSG_CHECKPOINT + "\n"));
+
+      commands = "MODE BUYER\nCANCEL 1 61234567\nBOOK 100 91234567 D4\n";
+      Files.write(commandFile, commands.getBytes());
+      BookingASystem.main(
+          new String[] {
+            BookingASystem.OPTION_SNAPSHOT, snapshotFile.toString(),
+            commandFile.toString(), outputFile.toString()
+          });
+      output = new String(Files.readAllBytes(outputFile), StandardCharsets.US_ASCII);
+      Assert.assertTrue(output.contains(BookingASystem.MSG_CANCEL_SUCCESS + "1\n"));
+      Assert.assertTrue(output.endsWith(BookingASystem.MSG_BOOK + "2\n"));
+    } finally {
+      Files.delete(commandFile);
+      Files.delete(outputFile);
+    }
+  }
+
+  /**
+   * Runs the query twice on a service restored from the snapshot, checking that only the first run
+   * looks up the snapshot's shows
+   */
+  @SuppressWarnings("try")
+  private void assertSnapshotShowsLoadedOnce(int expected, ToIntFunction<BookingService> query)
+      throws IOException {
+    AtomicInteger loads = new AtomicInteger();
+    BookingService restored =
+        new BookingService() {
+          @Override
+          public Show getShow(int showNum) {
+            loads.incrementAndGet();
+            return super.getShow(showNum);
+          }
+        };
+    try (Snapshot ignored = Snapshot.open(snapshotFile, restored)) {
+      Assert.assertEquals(expected, query.applyAsInt(restored));
+      loads.set(0);
+      Assert.assertEquals(expected, query.applyAsInt(restored));
+      Assert.assertEquals(0, loads.get());
+    }
+  }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable buffer of single-byte (ASCII/Latin-1) text. Rendered output is built here once and then
+ * written out as bytes as often as needed; the buffer can be reset and reused without
+ * reallocating.
+ */
+class TextBuffer {
+  private static final byte[] LINE_SEPARATOR =
+      System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+  private byte[] bytes;
+  private int length;
+
+  TextBuffer() {
+    this(64);
+  }
+
+  TextBuffer(int capacity) {
+    bytes = new byte[Math.max(capacity, 16)];
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public TextBuffer reset() {
+    length = 0;
+    return this;
+  }
+
+  public TextBuffer append(char c) {
+    ensureCapacity(1);
+    bytes[length++] = (byte) c;
+    return this;
+  }
+
+  public TextBuffer append(CharSequence text) {
+    int size = text.length();
+    ensureCapacity(size);
+    for (int i = 0; i < size; i++) {
+      bytes[length++] = (byte) text.charAt(i);
+    }
+    return this;
+  }
+
+  public TextBuffer append(int value) {
+    if (value == Integer.MIN_VALUE) {
+      return append("-2147483648");
+    }
+    ensureCapacity(11);
+    if (value < 0) {
+      bytes[length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (int v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    for (int i = length + digits - 1; i >= length; i--) {
+      bytes[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length += digits;
+    return this;
+  }
+
+  /** Appends the platform line separator, as PrintStream.println would */
+  public TextBuffer newLine() {
+    ensureCapacity(LINE_SEPARATOR.length);
+    System.arraycopy(LINE_SEPARATOR, 0, bytes, length, LINE_SEPARATOR.length);
+    length += LINE_SEPARATOR.length;
+    return this;
+  }
+
+  public void writeTo(PrintStream out) {
+    out.write(bytes, 0, length);
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, length);
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+    }
+  }
+}
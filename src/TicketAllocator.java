@@ -0,0 +1,113 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out ticket numbers that are unique across the workers of a BookingService and across
+ * restarts. Numbers are leased in blocks of BLOCK_SIZE aligned to the chunks of the TicketTable:
+ * a worker with a Block of its own takes a whole block from the shared counter and then numbers
+ * its tickets without touching shared state until the block runs out, while callers without one
+ * share the counter directly and lease its blocks as they reach them. Either way numbers stay
+ * dense enough for the table's array lookups.
+ *
+ * <p>The end of every block leased, the high-water mark, is appended to the journal once per
+ * block rather than with each ticket, ahead of the BOOK record of the block's first ticket, so it
+ * is durable before that ticket is. After a restart, numbering resumes at the high-water mark
+ * read back from the journal, as any number below it may have been handed out.
+ */
+class TicketAllocator {
+  // a chunk of the ticket table
+  public static final int BLOCK_SIZE = 4096;
+
+  // the next number not handed out, the start of the next block for workers with blocks
+  private final AtomicInteger next = new AtomicInteger(1);
+  // end of the highest block leased since the start, or restored from the journal
+  private final AtomicInteger highWaterMark = new AtomicInteger();
+  private Journal journal;
+
+  /** Block leased by one worker, only used by the worker's thread */
+  static final class Block {
+    private int next;
+    private int end;
+  }
+
+  /** Starts recording high-water marks, to be called before the allocator is shared */
+  public void setJournal(Journal journal) {
+    this.journal = journal;
+  }
+
+  /** Returns the next number not handed out, as stored in snapshots */
+  public int getNext() {
+    return next.get();
+  }
+
+  public int getHighWaterMark() {
+    return highWaterMark.get();
+  }
+
+  /** Returns the next number from the shared counter, leasing its block if it starts one */
+  public int nextTicketNum() {
+    return nextTicketNums(1);
+  }
+
+  /**
+   * Takes count consecutive numbers, at least one, from the shared counter, leasing the blocks
+   * they reach
+   *
+   * @return the first of the numbers
+   */
+  public int nextTicketNums(int count) {
+    int first = next.getAndAdd(count);
+    int last = first + count - 1;
+    if (last >= highWaterMark.get()) {
+      lease(blockEnd(last));
+    }
+    return first;
+  }
+
+  /** Returns the next number of the worker's block, leasing a new block once it runs out */
+  public int nextTicketNum(Block block) {
+    return nextTicketNums(block, 1);
+  }
+
+  /**
+   * Takes count consecutive numbers, at least one, from the worker's block. If they do not fit,
+   * the rest of the block is skipped and a new block is leased, longer than BLOCK_SIZE if needed.
+   *
+   * @return the first of the numbers
+   */
+  public int nextTicketNums(Block block, int count) {
+    if (block.end - block.next < count) {
+      // up to the end of the chunk the range ends in, whole chunks unless numbers were issued
+      // from the first one
+      block.next = next.getAndUpdate(start -> blockEnd(start + count - 1));
+      block.end = blockEnd(block.next + count - 1);
+      lease(block.end);
+    }
+    int first = block.next;
+    block.next += count;
+    return first;
+  }
+
+  /** Moves the counter to the number if it is behind, when state is restored */
+  public void advanceTo(int ticketNum) {
+    next.accumulateAndGet(ticketNum, Math::max);
+  }
+
+  /** Moves the counter past a high-water mark read back from the journal */
+  public void restoreHighWaterMark(int end) {
+    highWaterMark.accumulateAndGet(end, Math::max);
+    advanceTo(end);
+  }
+
+  /** Records a new high-water mark, unless another caller already recorded one as high */
+  private void lease(int end) {
+    int previous = highWaterMark.getAndAccumulate(end, Math::max);
+    if (end > previous && journal != null) {
+      // not awaited: the BOOK record of the ticket that needed the block follows it
+      journal.appendLease(end);
+    }
+  }
+
+  private static int blockEnd(int ticketNum) {
+    return (ticketNum / BLOCK_SIZE + 1) * BLOCK_SIZE;
+  }
+}
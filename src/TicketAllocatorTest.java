@@ -0,0 +1,55 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class TicketAllocatorTest {
+  @Test
+  public void shared_counter_numbers_in_sequence() {
+    TicketAllocator allocator = new TicketAllocator();
+    Assert.assertEquals(1, allocator.nextTicketNum());
+    Assert.assertEquals(TicketAllocator.BLOCK_SIZE, allocator.getHighWaterMark());
+    Assert.assertEquals(2, allocator.nextTicketNum());
+    Assert.assertEquals(3, allocator.getNext());
+  }
+
+  @Test
+  public void blocks_are_aligned_and_never_overlap() {
+    TicketAllocator allocator = new TicketAllocator();
+    allocator.nextTicketNum();
+    TicketAllocator.Block first = new TicketAllocator.Block();
+    TicketAllocator.Block second = new TicketAllocator.Block();
+    // the rest of the chunk the shared counter is in
+    Assert.assertEquals(2, allocator.nextTicketNum(first));
+    Assert.assertEquals(TicketAllocator.BLOCK_SIZE, allocator.nextTicketNum(second));
+    Assert.assertEquals(3, allocator.nextTicketNum(first));
+    Assert.assertEquals(TicketAllocator.BLOCK_SIZE + 1, allocator.nextTicketNum(second));
+    for (int i = 4; i < TicketAllocator.BLOCK_SIZE; i++) {
+      allocator.nextTicketNum(first);
+    }
+    Assert.assertEquals(2 * TicketAllocator.BLOCK_SIZE, allocator.nextTicketNum(first));
+    Assert.assertEquals(3 * TicketAllocator.BLOCK_SIZE, allocator.getHighWaterMark());
+    Assert.assertEquals(3 * TicketAllocator.BLOCK_SIZE, allocator.nextTicketNum());
+  }
+
+  @Test
+  public void range_that_does_not_fit_takes_a_new_block() {
+    TicketAllocator allocator = new TicketAllocator();
+    TicketAllocator.Block block = new TicketAllocator.Block();
+    Assert.assertEquals(1, allocator.nextTicketNums(block, TicketAllocator.BLOCK_SIZE - 2));
+    Assert.assertEquals(TicketAllocator.BLOCK_SIZE, allocator.nextTicketNums(block, 2));
+    // the rest of the second block is skipped
+    Assert.assertEquals(
+        2 * TicketAllocator.BLOCK_SIZE,
+        allocator.nextTicketNums(block, TicketAllocator.BLOCK_SIZE));
+    Assert.assertEquals(3 * TicketAllocator.BLOCK_SIZE, allocator.getHighWaterMark());
+  }
+
+  @Test
+  public void restored_high_water_mark_moves_counter() {
+    TicketAllocator allocator = new TicketAllocator();
+    allocator.advanceTo(10);
+    allocator.restoreHighWaterMark(TicketAllocator.BLOCK_SIZE);
+    allocator.advanceTo(20);
+    Assert.assertEquals(TicketAllocator.BLOCK_SIZE, allocator.nextTicketNum());
+    Assert.assertEquals(2 * TicketAllocator.BLOCK_SIZE, allocator.getHighWaterMark());
+  }
+}
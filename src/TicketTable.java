@@ -0,0 +1,206 @@
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tickets stored column by column in fixed-size chunks indexed directly by ticket number, so that
+ * a lookup is a couple of array reads with no hashing or boxing, and a ticket costs its show
+ * number, phone number, epoch millis and seat codes instead of a map entry, a boxed key and a
+ * Ticket object with its Instant. Ticket numbers are handed out in sequence and never reused, so a
+ * chunk whose tickets have all been cancelled is dropped, unless tickets may still be added to it.
+ *
+ * <p>The slot of a ticket is written under the monitor of the ticket's show. The show number is
+ * written last and cleared first, so a reader that sees it also sees the rest of the ticket; a
+ * reader without the show's monitor may see a ticket that is being cancelled.
+ *
+ * <p>Live tickets are also indexed by phone number across all shows, see PhoneIndex.
+ */
+class TicketTable {
+  private static final int CHUNK_BITS = 12;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private volatile AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(16);
+  // one past the highest ticket number stored, only the chunks below it may be dropped
+  private final AtomicInteger limit = new AtomicInteger();
+  private final AtomicInteger size = new AtomicInteger();
+  private final PhoneIndex phoneIndex = new PhoneIndex();
+
+  private static final class Chunk {
+    // 0 for a free or cancelled slot
+    private final AtomicIntegerArray showNum = new AtomicIntegerArray(CHUNK_SIZE);
+    private final int[] phoneNum = new int[CHUNK_SIZE];
+    private final long[] epochMillis = new long[CHUNK_SIZE];
+    // the seat of a single-seat ticket, the codes of the others are in seats
+    private final int[] seat = new int[CHUNK_SIZE];
+    private final int[][] seats = new int[CHUNK_SIZE][];
+    // live tickets, or -1 once the chunk has been dropped
+    private final AtomicInteger live = new AtomicInteger();
+
+    private boolean acquire() {
+      int count;
+      do {
+        count = live.get();
+        if (count < 0) {
+          return false;
+        }
+      } while (!live.compareAndSet(count, count + 1));
+      return true;
+    }
+  }
+
+  /** Returns the number of live tickets */
+  public int size() {
+    return size.get();
+  }
+
+  /** Returns the number of chunks allocated, for tests */
+  int chunkCount() {
+    AtomicReferenceArray<Chunk> array = chunks;
+    int count = 0;
+    for (int c = 0; c < array.length(); c++) {
+      if (array.get(c) != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Stores a ticket, the caller must hold the monitor of its show, whose number is not 0 */
+  public void put(int ticketNum, int phoneNum, int showNum, int[] seats, long epochMillis) {
+    int slot = ticketNum & CHUNK_MASK;
+    Chunk chunk;
+    do {
+      chunk = chunk(ticketNum >>> CHUNK_BITS);
+    } while (!chunk.acquire());
+    boolean replaced = chunk.showNum.get(slot) != 0;
+    if (replaced && chunk.phoneNum[slot] != phoneNum) {
+      phoneIndex.remove(chunk.phoneNum[slot], ticketNum);
+    }
+    chunk.phoneNum[slot] = phoneNum;
+    chunk.epochMillis[slot] = epochMillis;
+    if (seats.length == 1) {
+      chunk.seat[slot] = seats[0];
+      chunk.seats[slot] = null;
+    } else {
+      chunk.seats[slot] = seats;
+    }
+    chunk.showNum.set(slot, showNum);
+    phoneIndex.add(phoneNum, ticketNum);
+    if (replaced) {
+      chunk.live.decrementAndGet();
+    } else {
+      size.incrementAndGet();
+    }
+    limit.accumulateAndGet(ticketNum + 1, Math::max);
+  }
+
+  /**
+   * Removes a ticket, the caller must hold the monitor of its show
+   *
+   * @return false if there is no such ticket
+   */
+  public boolean remove(int ticketNum) {
+    int index = ticketNum >>> CHUNK_BITS;
+    int slot = ticketNum & CHUNK_MASK;
+    Chunk chunk = find(index);
+    if (chunk == null || chunk.showNum.get(slot) == 0) {
+      return false;
+    }
+    chunk.showNum.set(slot, 0);
+    chunk.seats[slot] = null;
+    phoneIndex.remove(chunk.phoneNum[slot], ticketNum);
+    size.decrementAndGet();
+    if (chunk.live.decrementAndGet() == 0
+        && ((long) index + 1) << CHUNK_BITS <= limit.get()
+        && chunk.live.compareAndSet(0, -1)) {
+      synchronized (this) {
+        if (chunks.get(index) == chunk) {
+          chunks.set(index, null);
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Returns the show number of a ticket, or 0 if there is no such ticket */
+  public int getShowNum(int ticketNum) {
+    Chunk chunk = find(ticketNum >>> CHUNK_BITS);
+    return chunk == null ? 0 : chunk.showNum.get(ticketNum & CHUNK_MASK);
+  }
+
+  /** Returns the phone number of a ticket, the caller must hold the monitor of its show */
+  public int getPhoneNum(int ticketNum) {
+    Chunk chunk = find(ticketNum >>> CHUNK_BITS);
+    return chunk == null ? 0 : chunk.phoneNum[ticketNum & CHUNK_MASK];
+  }
+
+  /** Returns the seat codes of a ticket, the caller must hold the monitor of its show */
+  public int[] getSeats(int ticketNum) {
+    Chunk chunk = find(ticketNum >>> CHUNK_BITS);
+    return chunk == null ? new int[0] : seats(chunk, ticketNum & CHUNK_MASK);
+  }
+
+  /** Returns the numbers of the live tickets of the phone number, in ascending order */
+  public int[] getTicketNums(int phoneNum) {
+    return phoneIndex.get(phoneNum);
+  }
+
+  /** Returns a copy of a ticket, or null if there is no such ticket */
+  public Ticket get(int ticketNum) {
+    Chunk chunk = find(ticketNum >>> CHUNK_BITS);
+    if (chunk == null) {
+      return null;
+    }
+    int slot = ticketNum & CHUNK_MASK;
+    int showNum = chunk.showNum.get(slot);
+    if (showNum == 0) {
+      return null;
+    }
+    int phoneNum = chunk.phoneNum[slot];
+    long epochMillis = chunk.epochMillis[slot];
+    int[] seats = seats(chunk, slot);
+    // slots are never reused, so the ticket was live throughout unless it is gone now
+    if (chunk.showNum.get(slot) != showNum) {
+      return null;
+    }
+    return new Ticket(ticketNum, phoneNum, showNum, seats, Instant.ofEpochMilli(epochMillis));
+  }
+
+  private static int[] seats(Chunk chunk, int slot) {
+    int[] seats = chunk.seats[slot];
+    return seats != null ? seats : new int[] {chunk.seat[slot]};
+  }
+
+  private Chunk find(int index) {
+    AtomicReferenceArray<Chunk> array = chunks;
+    return index < array.length() ? array.get(index) : null;
+  }
+
+  /** Returns the live chunk at the index, allocating it if it does not exist or was dropped */
+  private Chunk chunk(int index) {
+    Chunk chunk = find(index);
+    if (chunk != null && chunk.live.get() >= 0) {
+      return chunk;
+    }
+    synchronized (this) {
+      AtomicReferenceArray<Chunk> array = chunks;
+      if (index >= array.length()) {
+        AtomicReferenceArray<Chunk> grown =
+            new AtomicReferenceArray<>(Math.max(index + 1, array.length() * 2));
+        for (int c = 0; c < array.length(); c++) {
+          grown.set(c, array.get(c));
+        }
+        chunks = grown;
+        array = grown;
+      }
+      chunk = array.get(index);
+      if (chunk == null || chunk.live.get() < 0) {
+        chunk = new Chunk();
+        array.set(index, chunk);
+      }
+      return chunk;
+    }
+  }
+}
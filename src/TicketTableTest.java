@@ -0,0 +1,55 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class TicketTableTest {
+  @Test
+  public void put_get_remove_success() {
+    TicketTable table = new TicketTable();
+    table.put(1, 61234567, 100, new int[] {Seats.parse("D3")}, 1000L);
+    table.put(2, 91234567, 200, new int[] {Seats.parse("A1"), Seats.parse("A2")}, 2000L);
+
+    Ticket ticket = table.get(2);
+    Assert.assertEquals(91234567, ticket.getPhoneNum());
+    Assert.assertEquals(200, ticket.getShowNum());
+    Assert.assertEquals(2000L, ticket.getTimestamp().toEpochMilli());
+    Assert.assertArrayEquals(
+        new int[] {Seats.parse("A1"), Seats.parse("A2")}, ticket.getSeats());
+    Assert.assertArrayEquals(new int[] {Seats.parse("D3")}, table.getSeats(1));
+    Assert.assertEquals(2, table.size());
+
+    Assert.assertTrue(table.remove(1));
+    Assert.assertFalse(table.remove(1));
+    Assert.assertNull(table.get(1));
+    Assert.assertEquals(0, table.getShowNum(1));
+    Assert.assertNull(table.get(3));
+    Assert.assertNull(table.get(1 << 30));
+    Assert.assertEquals(1, table.size());
+  }
+
+  @Test
+  public void cancelled_chunks_are_dropped() {
+    TicketTable table = new TicketTable();
+    int tickets = 3 * 4096;
+    for (int t = 1; t <= tickets; t++) {
+      table.put(t, 60000000 + t, 100, new int[] {t % 1000}, t);
+    }
+    Assert.assertEquals(4, table.chunkCount());
+    for (int t = 1; t <= 2 * 4096; t++) {
+      table.remove(t);
+    }
+    // the first two chunks are empty, the others still hold tickets
+    Assert.assertEquals(2, table.chunkCount());
+    Assert.assertEquals(100, table.getShowNum(2 * 4096 + 1));
+
+    // the chunk being filled is kept even when all its tickets are cancelled
+    for (int t = 2 * 4096 + 1; t <= tickets; t++) {
+      table.remove(t);
+    }
+    Assert.assertEquals(1, table.chunkCount());
+    Assert.assertEquals(0, table.size());
+
+    // a ticket restored into a dropped chunk brings the chunk back
+    table.put(5, 61234567, 100, new int[] {5}, 5L);
+    Assert.assertEquals(61234567, table.get(5).getPhoneNum());
+  }
+}
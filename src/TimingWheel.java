@@ -0,0 +1,189 @@
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of deadlines, in the style of the kernel timer wheel. Each of the
+ * levels has 64 slots, a slot of level l spanning 64^l ticks, and each slot is an intrusive
+ * doubly linked list, so scheduling and cancelling a timer are O(1) and advancing the wheel costs
+ * O(1) per expired timer plus at most one move per level for a timer that starts on a higher
+ * level. Ticks before the next cascade of the lowest non-empty level are skipped, so a long idle
+ * gap costs a few steps per level. Timers never fire before their deadline and fire at most one
+ * tick after it.
+ *
+ * <p>The wheel is not thread-safe; callers guard it with a lock of their own.
+ */
+class TimingWheel<T> {
+  private static final int LEVELS = 4;
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+
+  private final long tickMillis;
+  private final Timer<T>[][] slots;
+  private final int[] counts = new int[LEVELS];
+  // the next tick to process, every tick before it has been processed
+  private long tick;
+  private int size;
+
+  /** A scheduled value, to be passed to cancel */
+  static final class Timer<T> {
+    private final T value;
+    private final long deadline;
+    private Timer<T> prev;
+    private Timer<T> next;
+    private int level = -1;
+    private int slot;
+
+    private Timer(T value, long deadline) {
+      this.value = value;
+      this.deadline = deadline;
+    }
+
+    public T getValue() {
+      return value;
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  TimingWheel(long tickMillis, long nowMillis) {
+    this.tickMillis = tickMillis;
+    this.slots = new Timer[LEVELS][SLOTS];
+    this.tick = nowMillis / tickMillis;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Returns the time in millis from which advance has work to do */
+  public long nextTickMillis() {
+    return tick * tickMillis;
+  }
+
+  /** Schedules the value to be passed to advance once the clock reaches the deadline */
+  public Timer<T> schedule(long deadlineMillis, T value) {
+    // rounded up so that a timer never fires early
+    Timer<T> timer = new Timer<>(value, (deadlineMillis + tickMillis - 1) / tickMillis);
+    place(timer);
+    size++;
+    return timer;
+  }
+
+  /**
+   * Removes a timer that has not fired yet
+   *
+   * @return false if the timer has already fired or been cancelled
+   */
+  public boolean cancel(Timer<T> timer) {
+    if (timer.level < 0) {
+      return false;
+    }
+    unlink(timer);
+    size--;
+    return true;
+  }
+
+  /**
+   * Moves the wheel forward to the given time, passing the value of every timer whose deadline has
+   * been reached to the consumer
+   *
+   * @return the number of timers that fired
+   */
+  public int advance(long nowMillis, Consumer<T> expired) {
+    long nowTick = nowMillis / tickMillis;
+    int fired = 0;
+    while (tick <= nowTick) {
+      if (size == 0) {
+        tick = nowTick + 1;
+        break;
+      }
+      // nothing happens before the next tick at which the lowest non-empty level cascades
+      int lowest = 0;
+      while (counts[lowest] == 0) {
+        lowest++;
+      }
+      long span = 1L << (lowest * SLOT_BITS);
+      if ((tick & (span - 1)) != 0) {
+        tick = Math.min(nowTick + 1, (tick | (span - 1)) + 1);
+        continue;
+      }
+      // refill the lower levels from the slots of the higher levels that start at this tick
+      for (int level = LEVELS - 1; level > 0; level--) {
+        if ((tick & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+          cascade(level, (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+        }
+      }
+      int slot = (int) tick & SLOT_MASK;
+      Timer<T> timer = slots[0][slot];
+      slots[0][slot] = null;
+      while (timer != null) {
+        counts[0]--;
+        Timer<T> next = timer.next;
+        timer.prev = null;
+        timer.next = null;
+        timer.level = -1;
+        size--;
+        fired++;
+        expired.accept(timer.value);
+        timer = next;
+      }
+      tick++;
+    }
+    return fired;
+  }
+
+  private void cascade(int level, int slot) {
+    Timer<T> timer = slots[level][slot];
+    slots[level][slot] = null;
+    while (timer != null) {
+      Timer<T> next = timer.next;
+      counts[level]--;
+      timer.prev = null;
+      timer.next = null;
+      place(timer);
+      timer = next;
+    }
+  }
+
+  private void place(Timer<T> timer) {
+    long delta = timer.deadline - tick;
+    int level = 0;
+    long deadline = timer.deadline;
+    if (delta <= 0) {
+      // already due, fire on the next tick processed
+      deadline = tick;
+    } else {
+      while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS)) {
+        level++;
+      }
+      if (level == LEVELS - 1 && delta >= 1L << (LEVELS * SLOT_BITS)) {
+        // beyond the top level, park in its furthest slot and place it again when it cascades
+        deadline = tick + (1L << (LEVELS * SLOT_BITS)) - 1;
+      }
+    }
+    int slot = (int) (deadline >>> (level * SLOT_BITS)) & SLOT_MASK;
+    Timer<T> head = slots[level][slot];
+    timer.next = head;
+    if (head != null) {
+      head.prev = timer;
+    }
+    slots[level][slot] = timer;
+    counts[level]++;
+    timer.level = level;
+    timer.slot = slot;
+  }
+
+  private void unlink(Timer<T> timer) {
+    counts[timer.level]--;
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    } else {
+      slots[timer.level][timer.slot] = timer.next;
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+    timer.prev = null;
+    timer.next = null;
+    timer.level = -1;
+  }
+}
@@ -0,0 +1,89 @@
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TimingWheelTest {
+  @Test
+  public void timers_fire_within_one_tick_of_deadline() {
+    TimingWheel<Integer> wheel = new TimingWheel<>(10, 1000);
+    wheel.schedule(1000, 0);
+    wheel.schedule(1005, 1);
+    wheel.schedule(1000 + 10 * 64, 2);
+    wheel.schedule(1000 + 10 * 64 * 64 * 3 + 7, 3);
+    List<Integer> fired = new ArrayList<>();
+
+    wheel.advance(999, fired::add);
+    Assert.assertTrue(fired.isEmpty());
+    wheel.advance(1000, fired::add);
+    Assert.assertEquals(1, fired.size());
+    wheel.advance(1010, fired::add);
+    Assert.assertEquals(2, fired.size());
+    wheel.advance(1000 + 10 * 64 - 1, fired::add);
+    Assert.assertEquals(2, fired.size());
+    wheel.advance(1000 + 10 * 64, fired::add);
+    Assert.assertEquals(3, fired.size());
+    wheel.advance(1000 + 10 * 64 * 64 * 3 + 9, fired::add);
+    Assert.assertEquals(3, fired.size());
+    wheel.advance(1000 + 10 * 64 * 64 * 3 + 10, fired::add);
+    Assert.assertEquals(4, fired.size());
+    Assert.assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void cancelled_timer_never_fires() {
+    TimingWheel<String> wheel = new TimingWheel<>(100, 0);
+    TimingWheel.Timer<String> timer = wheel.schedule(500_000, "hold");
+    Assert.assertTrue(wheel.cancel(timer));
+    Assert.assertFalse(wheel.cancel(timer));
+    Assert.assertEquals(0, wheel.advance(1_000_000, value -> Assert.fail()));
+  }
+
+  @Test
+  public void random_timers_match_deadlines() {
+    Random random = new Random(42);
+    long tickMillis = 5;
+    long now = 123_456;
+    TimingWheel<Long> wheel = new TimingWheel<>(tickMillis, now);
+    Map<Long, TimingWheel.Timer<Long>> pending = new HashMap<>();
+    long nextId = 0;
+    Map<Long, Long> deadlines = new HashMap<>();
+    for (int step = 0; step < 20000; step++) {
+      int op = random.nextInt(10);
+      if (op < 5) {
+        // mostly short deadlines, some spanning the higher levels and beyond the top one
+        long delay =
+            random.nextInt(4) == 0 ? (long) (random.nextDouble() * 2e11) : random.nextInt(5000);
+        long id = nextId++;
+        deadlines.put(id, now + delay);
+        pending.put(id, wheel.schedule(now + delay, id));
+      } else if (op < 6 && !pending.isEmpty()) {
+        long id = pending.keySet().iterator().next();
+        Assert.assertTrue(wheel.cancel(pending.remove(id)));
+      } else {
+        now += random.nextInt(random.nextInt(50) == 0 ? 1_000_000_000 : 200);
+        final long nowTick = now / tickMillis;
+        wheel.advance(
+            now,
+            id -> {
+              // never early, deadlines are rounded up to the next tick
+              Assert.assertTrue(ceilTick(deadlines.get(id), tickMillis) <= nowTick);
+              Assert.assertNotNull(pending.remove(id));
+            });
+        // never late, nothing due is left behind
+        for (long id : pending.keySet()) {
+          Assert.assertTrue(ceilTick(deadlines.get(id), tickMillis) > nowTick);
+        }
+      }
+      Assert.assertEquals(pending.size(), wheel.size());
+    }
+  }
+
+  private static long ceilTick(long millis, long tickMillis) {
+    return (millis + tickMillis - 1) / tickMillis;
+  }
+}